@@ -0,0 +1,56 @@
+package solutions.linked.jena;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads settings from the system property of the given name, or else the
+ * environment variable of that name.
+ *
+ * A number that can't be parsed or is out of range is logged and replaced by the
+ * default, so that a typo doesn't keep the server from starting.
+ */
+@Slf4j
+public final class Settings {
+
+    private Settings() {
+    }
+
+    /**
+     * @return the trimmed value, the default if it isn't set
+     */
+    public static String get(String name, String defaultValue) {
+        String value = System.getProperty(name, System.getenv(name));
+        return value == null ? defaultValue : value.trim();
+    }
+
+    /**
+     * @return the value, the default if it isn't set, not a number or less than the minimum
+     */
+    public static long getLong(String name, long defaultValue, long minimum) {
+        return number(name, defaultValue, minimum, Long.MAX_VALUE);
+    }
+
+    /**
+     * @return the value, the default if it isn't set, not a number or less than the minimum
+     */
+    public static int getInt(String name, int defaultValue, int minimum) {
+        return (int) number(name, defaultValue, minimum, Integer.MAX_VALUE);
+    }
+
+    private static long number(String name, long defaultValue, long minimum, long maximum) {
+        String value = get(name, null);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            long number = Long.parseLong(value);
+            if (number >= minimum && number <= maximum) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // warned about below
+        }
+        log.warn("Ignoring invalid value of " + name + ": " + value + ", using " + defaultValue);
+        return defaultValue;
+    }
+}
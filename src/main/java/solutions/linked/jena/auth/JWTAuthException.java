@@ -17,4 +17,16 @@ class JWTAuthException extends AuthenticationException {
     static JWTAuthException brokenAuthHeader() {
         return new JWTAuthException("Authorization header is broken!");
     }
+
+    static JWTAuthException invalidToken(String reason) {
+        return new JWTAuthException("Authorization token is invalid: " + reason);
+    }
+
+    static JWTAuthException expiredToken() {
+        return new JWTAuthException("Authorization token has expired!");
+    }
+
+    static JWTAuthException revokedToken() {
+        return new JWTAuthException("Authorization token has been revoked!");
+    }
 }
@@ -1,5 +1,7 @@
 package solutions.linked.jena.auth;
 
+import java.util.Set;
+
 import lombok.Data;
 import org.apache.shiro.authc.AuthenticationToken;
 
@@ -12,9 +14,15 @@ public class JWTAuthToken implements AuthenticationToken {
 
     private final String email;
 
-    JWTAuthToken(String value, String email) {
+    /**
+     * The roles and groups the token claims for the user.
+     */
+    private final Set<String> roles;
+
+    JWTAuthToken(String value, String email, Set<String> roles) {
         this.value = value;
         this.email = email;
+        this.roles = roles;
     }
 
     @Override
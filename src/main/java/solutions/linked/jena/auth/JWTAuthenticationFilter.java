@@ -1,6 +1,7 @@
 package solutions.linked.jena.auth;
 
 import java.io.IOException;
+import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
@@ -10,35 +11,83 @@ import javax.servlet.http.HttpServletResponse;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpHeaders;
 import org.apache.shiro.authc.AuthenticationException;
 import org.apache.shiro.authc.AuthenticationToken;
 import org.apache.shiro.web.filter.PathConfigProcessor;
 import org.apache.shiro.web.filter.authc.AuthenticatingFilter;
 import org.apache.shiro.web.util.WebUtils;
 
+/**
+ * Authenticates requests with a bearer token, which is verified locally by a
+ * {@link JWTVerifier}, without a round trip to the identity provider. An
+ * alternative to the {@link KeycloakAuthenticationFilter} for bearer-only use.
+ */
 @Slf4j
 public class JWTAuthenticationFilter extends AuthenticatingFilter implements PathConfigProcessor {
 
+    private static final String BEARER = "Bearer ";
+
     private final ObjectWriter objectWriter = new ObjectMapper().writer();
 
+    private final JWTVerifier verifier;
+
+    private final VerifiedTokenCache tokenCache;
+
+    public JWTAuthenticationFilter() {
+        this(JWTVerifier.fromEnvironment(), VerifiedTokenCache.fromEnvironment());
+    }
+
+    JWTAuthenticationFilter(JWTVerifier verifier, VerifiedTokenCache tokenCache) {
+        this.verifier = verifier;
+        this.tokenCache = tokenCache;
+    }
+
+    public VerifiedTokenCache getTokenCache() {
+        return tokenCache;
+    }
+
+    public void setRevocationCheck(RevocationCheck revocationCheck) {
+        tokenCache.setRevocationCheck(revocationCheck);
+    }
+
+    @Override
+    public void destroy() {
+        verifier.close();
+    }
+
+    @Override
+    protected boolean isEnabled(ServletRequest request, ServletResponse response) throws ServletException, IOException {
+        return super.isEnabled(request, response) && isNotBasicAuth(request);
+    }
+
+    private boolean isNotBasicAuth(ServletRequest request) {
+        String authHeader = getAuthHeader((HttpServletRequest) request);
+        return authHeader == null || !authHeader.trim().toLowerCase().startsWith("basic");
+    }
+
     @Override
     protected AuthenticationToken createToken(ServletRequest request, ServletResponse response) {
         String authHeader = getAuthHeader((HttpServletRequest) request);
         if (authHeader == null) {
-            System.out.println("No Authorization token");
+            log.debug("No Authorization token");
             throw JWTAuthException.noAuthHeader();
         }
-        if (!authHeader.startsWith("Bearer")) {
-            System.out.println("Wrong Authorization token: " + authHeader);
+        if (!authHeader.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            log.debug("Authorization header without bearer token");
             throw JWTAuthException.brokenAuthHeader();
         }
-        String jwtContent = authHeader.substring(authHeader.indexOf(" ")).trim();
-        System.out.println("Got auth token: " + jwtContent);
-        return new JWTAuthToken(jwtContent, "user@mail.com");
+        String jwtContent = authHeader.substring(BEARER.length()).trim();
+        JWTClaims claims = tokenCache.get(jwtContent);
+        if (claims == null) {
+            claims = verifier.verify(jwtContent);
+            tokenCache.put(jwtContent, claims);
+        }
+        return new JWTAuthToken(jwtContent, claims.getPrincipal(), claims.getRoles());
     }
 
     private String getAuthHeader(HttpServletRequest request) {
-        return request.getHeader("Authorization");
+        return request.getHeader(HttpHeaders.AUTHORIZATION);
     }
 
     @Override
@@ -53,7 +102,7 @@ public class JWTAuthenticationFilter extends AuthenticatingFilter implements Pat
     }
 
     private boolean sendChallenge(ServletResponse response) {
-        System.out.println("Authentication required: sending 401 Authentication challenge response.");
+        log.debug("Authentication required: sending 401 Authentication challenge response.");
 
         HttpServletResponse httpResponse = WebUtils.toHttp(response);
         httpResponse.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
@@ -80,9 +129,7 @@ public class JWTAuthenticationFilter extends AuthenticatingFilter implements Pat
             ServletOutputStream outputStream = httpResponse.getOutputStream();
             objectWriter.writeValue(outputStream, new AuthError(401, e.getMessage()));
         } catch (IOException e1) {
-            System.out.println("Unable to write response: " + e.getMessage());
-            System.out.println(e.getMessage());
-            e.printStackTrace();
+            log.warn("Unable to write response: " + e1.getMessage(), e1);
         }
     }
 }
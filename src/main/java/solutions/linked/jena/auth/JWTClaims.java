@@ -0,0 +1,36 @@
+package solutions.linked.jena.auth;
+
+import java.util.Set;
+
+import lombok.Value;
+
+/**
+ * The claims of a verified JSON Web Token this server makes use of.
+ */
+@Value
+public class JWTClaims {
+
+    private String principal;
+
+    private String issuer;
+
+    /**
+     * The {@code jti} claim, {@code null} if the token has none.
+     */
+    private String tokenId;
+
+    /**
+     * Seconds since the epoch, 0 if the token doesn't tell.
+     */
+    private long issuedAt;
+
+    /**
+     * Seconds since the epoch.
+     */
+    private long expiresAt;
+
+    /**
+     * The realm roles and the groups of the principal.
+     */
+    private Set<String> roles;
+}
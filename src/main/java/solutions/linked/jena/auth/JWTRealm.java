@@ -1,5 +1,7 @@
 package solutions.linked.jena.auth;
 
+import java.util.HashSet;
+
 import lombok.extern.slf4j.Slf4j;
 import org.apache.shiro.authc.AuthenticationException;
 import org.apache.shiro.authc.AuthenticationInfo;
@@ -9,24 +11,43 @@ import org.apache.shiro.authz.AuthorizationInfo;
 import org.apache.shiro.authz.SimpleAuthorizationInfo;
 import org.apache.shiro.realm.AuthorizingRealm;
 import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.SimplePrincipalCollection;
 
+/**
+ * Authenticates the tokens the authenticating filters have verified. The roles of
+ * the user are those the token claims, taken once per token.
+ *
+ * Authentication info isn't cached, tokens are verified once by the filters'
+ * {@link VerifiedTokenCache}, which expires them. Authorization info is cached by
+ * principals, the user and the claimed roles, in the caches of the
+ * {@code CacheManager} set, by default a {@link LocalCacheManager}.
+ */
 @Slf4j
 public class JWTRealm extends AuthorizingRealm {
 
+    public JWTRealm() {
+        super(new LocalCacheManager());
+        setName("jwt");
+    }
+
     @Override
     public boolean supports(AuthenticationToken token) {
-        System.out.println("Check if token supported: " + token);
         return token instanceof JWTAuthToken;
     }
 
     @Override
     protected AuthorizationInfo doGetAuthorizationInfo(PrincipalCollection principals) {
-        return new SimpleAuthorizationInfo();
+        JWTRoles roles = principals.oneByType(JWTRoles.class);
+        return new SimpleAuthorizationInfo(roles == null ? new HashSet<>() : new HashSet<>(roles.getRoles()));
     }
 
     @Override
     protected AuthenticationInfo doGetAuthenticationInfo(AuthenticationToken token) throws AuthenticationException {
-        return new SimpleAuthenticationInfo(token.getPrincipal(), token.getCredentials(), "jwt");
+        JWTAuthToken jwtToken = (JWTAuthToken) token;
+        SimplePrincipalCollection principals = new SimplePrincipalCollection(jwtToken.getEmail(), getName());
+        if (jwtToken.getRoles() != null) {
+            principals.add(new JWTRoles(jwtToken.getRoles()), getName());
+        }
+        return new SimpleAuthenticationInfo(principals, jwtToken.getCredentials());
     }
-
 }
@@ -0,0 +1,27 @@
+package solutions.linked.jena.auth;
+
+import org.apache.shiro.authc.AuthenticationException;
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.pam.ModularRealmAuthenticator;
+import org.apache.shiro.realm.Realm;
+
+/**
+ * Authenticates {@link JWTAuthToken}s with the {@link JWTRealm} alone, without
+ * trying the other realms, and other tokens with all realms.
+ */
+public class JWTRealmAuthenticator extends ModularRealmAuthenticator {
+
+    @Override
+    protected AuthenticationInfo doAuthenticate(AuthenticationToken token) throws AuthenticationException {
+        if (token instanceof JWTAuthToken) {
+            assertRealmsConfigured();
+            for (Realm realm : getRealms()) {
+                if (realm instanceof JWTRealm) {
+                    return doSingleRealmAuthentication(realm, token);
+                }
+            }
+        }
+        return super.doAuthenticate(token);
+    }
+}
@@ -0,0 +1,44 @@
+package solutions.linked.jena.auth;
+
+import org.apache.shiro.authz.Authorizer;
+import org.apache.shiro.authz.ModularRealmAuthorizer;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.realm.Realm;
+import org.apache.shiro.subject.PrincipalCollection;
+
+/**
+ * Authorizes subjects authenticated by the {@link JWTRealm} with that realm alone,
+ * without asking the other realms, and other subjects with all realms.
+ */
+public class JWTRealmAuthorizer extends ModularRealmAuthorizer {
+
+    @Override
+    public boolean isPermitted(PrincipalCollection principals, String permission) {
+        Authorizer realm = jwtRealm(principals);
+        return realm == null ? super.isPermitted(principals, permission) : realm.isPermitted(principals, permission);
+    }
+
+    @Override
+    public boolean isPermitted(PrincipalCollection principals, Permission permission) {
+        Authorizer realm = jwtRealm(principals);
+        return realm == null ? super.isPermitted(principals, permission) : realm.isPermitted(principals, permission);
+    }
+
+    @Override
+    public boolean hasRole(PrincipalCollection principals, String roleIdentifier) {
+        Authorizer realm = jwtRealm(principals);
+        return realm == null ? super.hasRole(principals, roleIdentifier) : realm.hasRole(principals, roleIdentifier);
+    }
+
+    private Authorizer jwtRealm(PrincipalCollection principals) {
+        if (principals == null || getRealms() == null) {
+            return null;
+        }
+        for (Realm realm : getRealms()) {
+            if (realm instanceof JWTRealm && !principals.fromRealm(realm.getName()).isEmpty()) {
+                return (Authorizer) realm;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,18 @@
+package solutions.linked.jena.auth;
+
+import java.io.Serializable;
+import java.util.Set;
+
+import lombok.Value;
+
+/**
+ * The roles and groups a token claims for its user, kept as a secondary principal
+ * by the {@link JWTRealm}.
+ */
+@Value
+public class JWTRoles implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Set<String> roles;
+}
@@ -0,0 +1,293 @@
+package solutions.linked.jena.auth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import solutions.linked.jena.Settings;
+
+/**
+ * Verifies RS256 and ES256 signed JSON Web Tokens locally against the keys of a
+ * {@link JsonWebKeySet}, checks that they are bearer tokens, their validity
+ * period, issuer and audience, and reads the principal claim. Header and claims are read with a streaming parser, skipping the
+ * claims that aren't used.
+ */
+@Slf4j
+public class JWTVerifier implements AutoCloseable {
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    private static final long CLOCK_SKEW_SECONDS = 30;
+
+    private final JsonWebKeySet keySet;
+    private final String principalClaim;
+    private final String issuer;
+    private final String audience;
+
+    /**
+     * @param issuer the issuer tokens must have, {@code null} to accept any
+     * @param audience the client tokens must be issued to or for, {@code null} to accept any
+     */
+    JWTVerifier(JsonWebKeySet keySet, String principalClaim, String issuer, String audience) {
+        this.keySet = keySet;
+        this.principalClaim = principalClaim;
+        this.issuer = issuer;
+        this.audience = audience;
+    }
+
+    /**
+     * A verifier using the keys at {@code JWKS_URL}, by default the certificates
+     * endpoint of the realm in {@code keycloak.json} at {@code AUTH_SERVER_URL},
+     * reloaded every {@code JWKS_REFRESH_SECONDS}. The principal is read from the
+     * {@code JWT_PRINCIPAL_CLAIM}, {@code email} by default. If {@code JWT_ISSUER}
+     * is set, tokens must have been issued by it, if {@code JWT_AUDIENCE} is set,
+     * they must have it as audience or authorized party.
+     */
+    public static JWTVerifier fromEnvironment() {
+        JsonNode adapterConfig = readAdapterConfig();
+        String jwksUrl = Settings.get("JWKS_URL", null);
+        if (jwksUrl == null) {
+            String authServerUrl = Settings.get("AUTH_SERVER_URL", adapterConfig.path("auth-server-url").asText());
+            jwksUrl = authServerUrl + "/realms/" + adapterConfig.path("realm").asText() + "/protocol/openid-connect/certs";
+        }
+        long refreshSeconds = Settings.getLong("JWKS_REFRESH_SECONDS", 300, 1);
+        long minSecondsBetweenLoads = adapterConfig.path("min-time-between-jwks-requests").asLong(10);
+        try {
+            return new JWTVerifier(new JsonWebKeySet(new URL(jwksUrl), refreshSeconds, minSecondsBetweenLoads),
+                    Settings.get("JWT_PRINCIPAL_CLAIM", "email"), Settings.get("JWT_ISSUER", null), Settings.get("JWT_AUDIENCE", null));
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Invalid JWKS URL " + jwksUrl, e);
+        }
+    }
+
+    private static JsonNode readAdapterConfig() {
+        try (InputStream is = JWTVerifier.class.getClassLoader().getResourceAsStream("keycloak.json")) {
+            return is == null ? new ObjectMapper().createObjectNode() : new ObjectMapper().readTree(is);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stops reloading the keys in the background.
+     */
+    @Override
+    public void close() {
+        keySet.close();
+    }
+
+    /**
+     * @throws JWTAuthException if the token isn't valid
+     */
+    public JWTClaims verify(String token) {
+        int headerEnd = token.indexOf('.');
+        int payloadEnd = headerEnd < 0 ? -1 : token.indexOf('.', headerEnd + 1);
+        if (payloadEnd < 0 || token.indexOf('.', payloadEnd + 1) >= 0) {
+            throw JWTAuthException.invalidToken("not a signed JWT");
+        }
+        try {
+            String[] header = parseHeader(decode(token, 0, headerEnd));
+            verifySignature(token, payloadEnd, header[0], header[1]);
+            return checkClaims(decode(token, headerEnd + 1, payloadEnd));
+        } catch (IOException | IllegalArgumentException e) {
+            log.debug("Malformed token: " + e.getMessage());
+            throw JWTAuthException.invalidToken("malformed");
+        }
+    }
+
+    private static byte[] decode(String token, int start, int end) {
+        return Base64.getUrlDecoder().decode(token.substring(start, end));
+    }
+
+    // algorithm and key id
+    private static String[] parseHeader(byte[] json) throws IOException {
+        String[] header = new String[2];
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw JWTAuthException.invalidToken("malformed header");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                if (name.equals("alg")) {
+                    header[0] = scalar(parser, name).getValueAsString();
+                } else if (name.equals("kid")) {
+                    header[1] = scalar(parser, name).getValueAsString();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return header;
+    }
+
+    private void verifySignature(String token, int signedLength, String algorithm, String keyId) {
+        String signatureAlgorithm;
+        String keyAlgorithm;
+        if ("RS256".equals(algorithm)) {
+            signatureAlgorithm = "SHA256withRSA";
+            keyAlgorithm = "RSA";
+        } else if ("ES256".equals(algorithm)) {
+            signatureAlgorithm = "SHA256withECDSA";
+            keyAlgorithm = "EC";
+        } else {
+            throw JWTAuthException.invalidToken("unsupported algorithm " + algorithm);
+        }
+        PublicKey key = keySet.getKey(keyId);
+        if (key == null || !key.getAlgorithm().equals(keyAlgorithm)) {
+            throw JWTAuthException.invalidToken("unknown signing key");
+        }
+        byte[] signature = decode(token, signedLength + 1, token.length());
+        try {
+            Signature verifier = Signature.getInstance(signatureAlgorithm);
+            verifier.initVerify(key);
+            verifier.update(token.getBytes(StandardCharsets.US_ASCII), 0, signedLength);
+            if (verifier.verify(keyAlgorithm.equals("EC") ? derSignature(signature) : signature)) {
+                return;
+            }
+        } catch (GeneralSecurityException e) {
+            log.debug("Signature not verifiable: " + e.getMessage());
+        }
+        throw JWTAuthException.invalidToken("signature mismatch");
+    }
+
+    // JWS has the R and S of ECDSA signatures concatenated, Java wants them DER encoded
+    private static byte[] derSignature(byte[] signature) {
+        if (signature.length != 64) {
+            throw JWTAuthException.invalidToken("signature mismatch");
+        }
+        byte[] r = new BigInteger(1, Arrays.copyOfRange(signature, 0, 32)).toByteArray();
+        byte[] s = new BigInteger(1, Arrays.copyOfRange(signature, 32, 64)).toByteArray();
+        byte[] der = new byte[6 + r.length + s.length];
+        der[0] = 0x30;
+        der[1] = (byte) (4 + r.length + s.length);
+        der[2] = 0x02;
+        der[3] = (byte) r.length;
+        System.arraycopy(r, 0, der, 4, r.length);
+        der[4 + r.length] = 0x02;
+        der[5 + r.length] = (byte) s.length;
+        System.arraycopy(s, 0, der, 6 + r.length, s.length);
+        return der;
+    }
+
+    private JWTClaims checkClaims(byte[] json) throws IOException {
+        String principal = null;
+        String tokenIssuer = null;
+        String tokenId = null;
+        String type = null;
+        String authorizedParty = null;
+        Set<String> audiences = new HashSet<>();
+        long issuedAt = 0;
+        long expiresAt = -1;
+        Set<String> roles = new HashSet<>();
+        long notBefore = 0;
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw JWTAuthException.invalidToken("malformed claims");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                if (name.equals(principalClaim)) {
+                    principal = scalar(parser, name).getValueAsString();
+                } else if (name.equals("exp")) {
+                    expiresAt = scalar(parser, name).getValueAsLong(-1);
+                } else if (name.equals("nbf")) {
+                    notBefore = scalar(parser, name).getValueAsLong(0);
+                } else if (name.equals("iss")) {
+                    tokenIssuer = scalar(parser, name).getValueAsString();
+                } else if (name.equals("typ")) {
+                    type = scalar(parser, name).getValueAsString();
+                } else if (name.equals("azp")) {
+                    authorizedParty = scalar(parser, name).getValueAsString();
+                } else if (name.equals("aud")) {
+                    if (parser.getCurrentToken() == JsonToken.VALUE_STRING) {
+                        audiences.add(parser.getText());
+                    } else {
+                        readStrings(parser, audiences);
+                    }
+                } else if (name.equals("jti")) {
+                    tokenId = scalar(parser, name).getValueAsString();
+                } else if (name.equals("iat")) {
+                    issuedAt = scalar(parser, name).getValueAsLong(0);
+                } else if (name.equals("realm_access") && parser.getCurrentToken() == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        boolean isRoles = parser.getCurrentName().equals("roles");
+                        parser.nextToken();
+                        if (isRoles) {
+                            readStrings(parser, roles);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else if (name.equals("groups")) {
+                    readStrings(parser, roles);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        if (!"Bearer".equals(type)) {
+            throw JWTAuthException.invalidToken("not a bearer token");
+        }
+        long now = System.currentTimeMillis() / 1000;
+        if (expiresAt < 0) {
+            throw JWTAuthException.invalidToken("no expiry");
+        }
+        if (now > expiresAt + CLOCK_SKEW_SECONDS) {
+            throw JWTAuthException.expiredToken();
+        }
+        if (now + CLOCK_SKEW_SECONDS < notBefore) {
+            throw JWTAuthException.invalidToken("not valid yet");
+        }
+        if (issuer != null && !issuer.equals(tokenIssuer)) {
+            throw JWTAuthException.invalidToken("unexpected issuer " + tokenIssuer);
+        }
+        if (audience != null && !audiences.contains(audience) && !audience.equals(authorizedParty)) {
+            throw JWTAuthException.invalidToken("not issued for " + audience);
+        }
+        if (principal == null) {
+            throw JWTAuthException.invalidToken("no " + principalClaim + " claim");
+        }
+        return new JWTClaims(principal, tokenIssuer, tokenId, issuedAt, expiresAt, Collections.unmodifiableSet(roles));
+    }
+
+    // a claim with a single value, the fields of an object in its place must not be taken for claims
+    private static JsonParser scalar(JsonParser parser, String name) {
+        if (parser.getCurrentToken().isStructStart()) {
+            throw JWTAuthException.invalidToken("malformed " + name);
+        }
+        return parser;
+    }
+
+    private static void readStrings(JsonParser parser, Set<String> values) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY && token != null; token = parser.nextToken()) {
+            if (token == JsonToken.VALUE_STRING) {
+                values.add(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package solutions.linked.jena.auth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The RSA and P-256 EC signing keys of a JSON Web Key Set by key id, loaded from
+ * a URL, which may be a file URL, and reloaded in the background.
+ *
+ * A key id that isn't known causes a reload on the requesting thread, at most
+ * once per minimum time between loads though, so that tokens signed with a key
+ * that was just rotated in are accepted without waiting for the next refresh.
+ * The background reloads of all key sets share one daemon thread.
+ */
+@Slf4j
+class JsonWebKeySet implements AutoCloseable {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final int TIMEOUT_MILLIS = 5000;
+    // shared by all key sets, reloading takes little time and is rare
+    private static final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jwks-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final URL url;
+    private final long minNanosBetweenLoads;
+    private final ScheduledFuture<?> refresh;
+    private volatile Map<String, PublicKey> keys = Collections.emptyMap();
+    private boolean loaded;
+    private long lastLoad;
+
+    JsonWebKeySet(URL url, long refreshSeconds, long minSecondsBetweenLoads) {
+        this.url = url;
+        this.minNanosBetweenLoads = TimeUnit.SECONDS.toNanos(minSecondsBetweenLoads);
+        this.refresh = refresher.scheduleWithFixedDelay(() -> load(false), refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops reloading the keys in the background.
+     */
+    @Override
+    public void close() {
+        refresh.cancel(false);
+    }
+
+    /**
+     * @param keyId the {@code kid} of the token, {@code null} if it has none
+     * @return the key, {@code null} if there is no such key
+     */
+    PublicKey getKey(String keyId) {
+        PublicKey key = find(keyId);
+        if (key == null) {
+            load(true);
+            key = find(keyId);
+        }
+        return key;
+    }
+
+    private PublicKey find(String keyId) {
+        Map<String, PublicKey> current = keys;
+        if (keyId == null) {
+            return current.size() == 1 ? current.values().iterator().next() : null;
+        }
+        return current.get(keyId);
+    }
+
+    private synchronized void load(boolean rateLimited) {
+        long now = System.nanoTime();
+        if (rateLimited && loaded && now - lastLoad < minNanosBetweenLoads) {
+            return;
+        }
+        lastLoad = now;
+        try {
+            URLConnection connection = url.openConnection();
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            try (InputStream in = connection.getInputStream()) {
+                keys = parse(objectMapper.readTree(in));
+            }
+            log.debug("Loaded {} key(s) from {}", keys.size(), url);
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            log.warn("Failed to load JSON Web Key Set from " + url + ": " + e.getMessage());
+        } finally {
+            loaded = true;
+        }
+    }
+
+    static Map<String, PublicKey> parse(JsonNode jwks) throws GeneralSecurityException {
+        Map<String, PublicKey> keys = new HashMap<>();
+        for (JsonNode jwk : jwks.path("keys")) {
+            if (!jwk.path("use").asText("sig").equals("sig")) {
+                continue;
+            }
+            PublicKey key = publicKey(jwk);
+            if (key != null) {
+                keys.put(jwk.path("kid").asText(""), key);
+            }
+        }
+        return Collections.unmodifiableMap(keys);
+    }
+
+    private static PublicKey publicKey(JsonNode jwk) throws GeneralSecurityException {
+        switch (jwk.path("kty").asText()) {
+            case "RSA":
+                return KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(unsigned(jwk, "n"), unsigned(jwk, "e")));
+            case "EC":
+                if (!jwk.path("crv").asText().equals("P-256")) {
+                    return null;
+                }
+                AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+                parameters.init(new ECGenParameterSpec("secp256r1"));
+                ECPoint point = new ECPoint(unsigned(jwk, "x"), unsigned(jwk, "y"));
+                return KeyFactory.getInstance("EC").generatePublic(new ECPublicKeySpec(point, parameters.getParameterSpec(ECParameterSpec.class)));
+            default:
+                return null;
+        }
+    }
+
+    private static BigInteger unsigned(JsonNode jwk, String name) {
+        return new BigInteger(1, Base64.getUrlDecoder().decode(jwk.path(name).asText()));
+    }
+}
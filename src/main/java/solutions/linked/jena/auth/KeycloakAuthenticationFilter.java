@@ -19,7 +19,11 @@ package solutions.linked.jena.auth;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Objects;
+import java.util.Set;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
@@ -36,6 +40,7 @@ import org.keycloak.adapters.AdapterDeploymentContext;
 import org.keycloak.adapters.KeycloakDeployment;
 import org.keycloak.adapters.KeycloakDeploymentBuilder;
 import org.keycloak.adapters.NodesRegistrationManagement;
+import org.keycloak.adapters.rotation.AdapterRSATokenVerifier;
 import org.keycloak.adapters.servlet.FilterRequestAuthenticator;
 import org.keycloak.adapters.servlet.OIDCFilterSessionStore;
 import org.keycloak.adapters.servlet.OIDCServletHttpFacade;
@@ -43,6 +48,8 @@ import org.keycloak.adapters.spi.AuthChallenge;
 import org.keycloak.adapters.spi.AuthOutcome;
 import org.keycloak.adapters.spi.InMemorySessionIdMapper;
 import org.keycloak.adapters.spi.SessionIdMapper;
+import org.keycloak.common.VerificationException;
+import org.keycloak.representations.AccessToken;
 import org.keycloak.representations.adapters.config.AdapterConfig;
 
 /**
@@ -58,6 +65,17 @@ public class KeycloakAuthenticationFilter extends AuthenticatingFilter implement
 
     private NodesRegistrationManagement nodesRegistrationManagement;
 
+    private KeycloakDeployment deployment;
+
+    /**
+     * Whether the deployment is bearer-only, bearer tokens are then verified directly
+     * without the session store, node registration and challenges of the adapter.
+     * So they are for requests that may not create sessions, see {@link StatelessRequestFilter}.
+     */
+    private boolean bearerOnly;
+
+    private final VerifiedTokenCache tokenCache = VerifiedTokenCache.fromEnvironment();
+
     /**
      * Constructor that can be used to define a {@code KeycloakConfigResolver} that will be used at initialization to
      * provide the {@code KeycloakDeployment}.
@@ -67,6 +85,18 @@ public class KeycloakAuthenticationFilter extends AuthenticatingFilter implement
         onFilterConfigSet();
     }
 
+    KeycloakAuthenticationFilter(AdapterConfig adapterConfig) {
+        configure(adapterConfig);
+    }
+
+    public VerifiedTokenCache getTokenCache() {
+        return tokenCache;
+    }
+
+    public void setRevocationCheck(RevocationCheck revocationCheck) {
+        tokenCache.setRevocationCheck(revocationCheck);
+    }
+
     @Override
     protected boolean isEnabled(ServletRequest request, ServletResponse response) throws ServletException, IOException {
         return super.isEnabled(request, response) && isNotBasicAuth(request);
@@ -90,12 +120,18 @@ public class KeycloakAuthenticationFilter extends AuthenticatingFilter implement
 
     @Override
     protected boolean onAccessDenied(ServletRequest request, ServletResponse response) throws Exception {
-        boolean loggedIn = executeLogin(request, response);
+        boolean loggedIn;
+        try {
+            loggedIn = executeLogin(request, response);
+        } catch (JWTAuthException e) {
+            log.debug("Bearer token rejected: " + e.getMessage());
+            loggedIn = false;
+        }
         return loggedIn || sendChallenge(response);
     }
 
     private boolean sendChallenge(ServletResponse response) {
-        System.out.println("Authentication required: sending 401 Authentication challenge response.");
+        log.debug("Authentication required: sending 401 Authentication challenge response.");
 
         HttpServletResponse httpResponse = WebUtils.toHttp(response);
         httpResponse.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
@@ -104,15 +140,28 @@ public class KeycloakAuthenticationFilter extends AuthenticatingFilter implement
 
     @Override
     protected AuthenticationToken createToken(ServletRequest req, ServletResponse res) throws Exception {
-        System.out.println("Keycloak OIDC Filter");
         HttpServletRequest request = (HttpServletRequest) req;
         HttpServletResponse response = (HttpServletResponse) res;
+        String bearerToken = getBearerToken(request);
+        if (bearerToken != null) {
+            JWTClaims claims = tokenCache.get(bearerToken);
+            if (claims != null) {
+                return new JWTAuthToken(bearerToken, claims.getPrincipal(), claims.getRoles());
+            }
+        }
+        if (bearerOnly || (bearerToken != null && !WebUtils._isSessionCreationEnabled(request))) {
+            if (bearerToken == null) {
+                throw JWTAuthException.noAuthHeader();
+            }
+            return verifyBearerToken(bearerToken);
+        }
+        log.debug("Keycloak OIDC Filter");
 
         OIDCServletHttpFacade facade = new OIDCServletHttpFacade(request, response);
         KeycloakDeployment deployment = deploymentContext.resolveDeployment(facade);
         if (deployment == null || !deployment.isConfigured()) {
             response.sendError(403);
-            System.out.println("deployment not configured");
+            log.error("deployment not configured");
             throw new IllegalStateException("deployment not configured");
         }
 
@@ -124,12 +173,16 @@ public class KeycloakAuthenticationFilter extends AuthenticatingFilter implement
         FilterRequestAuthenticator authenticator = new FilterRequestAuthenticator(deployment, tokenStore, facade, request, 8443);
         AuthOutcome outcome = authenticator.authenticate();
         if (outcome == AuthOutcome.AUTHENTICATED) {
-            System.out.println("AUTHENTICATED");
-            return getAuthenticationToken(facade);
+            log.debug("AUTHENTICATED");
+            JWTAuthToken token = getAuthenticationToken(facade);
+            if (token.getValue().equals(bearerToken)) {
+                tokenCache.put(bearerToken, claims(token.getEmail(), facade.getSecurityContext().getToken()));
+            }
+            return token;
         }
         AuthChallenge challenge = authenticator.getChallenge();
         if (challenge != null) {
-            System.out.println("challenge");
+            log.debug("challenge");
             challenge.challenge(facade);
             return null;
         }
@@ -137,11 +190,53 @@ public class KeycloakAuthenticationFilter extends AuthenticatingFilter implement
         return null;
     }
 
-    private AuthenticationToken getAuthenticationToken(OIDCServletHttpFacade facade) {
+    private JWTAuthToken verifyBearerToken(String bearerToken) {
+        AccessToken token;
+        try {
+            token = AdapterRSATokenVerifier.verifyToken(bearerToken, deployment);
+        } catch (VerificationException e) {
+            throw JWTAuthException.invalidToken(e.getMessage());
+        }
+        if (token.getEmail() == null) {
+            throw JWTAuthException.invalidToken("no email claim");
+        }
+        JWTClaims claims = claims(token.getEmail(), token);
+        tokenCache.put(bearerToken, claims);
+        return new JWTAuthToken(bearerToken, claims.getPrincipal(), claims.getRoles());
+    }
+
+    private static String getBearerToken(HttpServletRequest request) {
+        String authHeader = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authHeader == null || !authHeader.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return null;
+        }
+        return authHeader.substring(7).trim();
+    }
+
+    private static JWTClaims claims(String principal, AccessToken token) {
+        return new JWTClaims(principal, token.getIssuer(), token.getId(), token.getIssuedAt(), token.getExpiration(), roles(token));
+    }
+
+    // realm roles and groups, like the JWTVerifier reads them
+    private static Set<String> roles(AccessToken token) {
+        Set<String> roles = new HashSet<>();
+        if (token.getRealmAccess() != null && token.getRealmAccess().getRoles() != null) {
+            roles.addAll(token.getRealmAccess().getRoles());
+        }
+        Object groups = token.getOtherClaims().get("groups");
+        if (groups instanceof Collection) {
+            for (Object group : (Collection<?>) groups) {
+                roles.add(group.toString());
+            }
+        }
+        return Collections.unmodifiableSet(roles);
+    }
+
+    private JWTAuthToken getAuthenticationToken(OIDCServletHttpFacade facade) {
         String email = facade.getSecurityContext().getToken().getEmail();
         Objects.requireNonNull(email, "Token must contain email clause.");
         String token = facade.getSecurityContext().getTokenString();
-        return new JWTAuthToken(token, email);
+        return new JWTAuthToken(token, email, roles(facade.getSecurityContext().getToken()));
     }
 
     @Override
@@ -152,14 +247,23 @@ public class KeycloakAuthenticationFilter extends AuthenticatingFilter implement
             if (authServerUrl != null) {
                 adapterConfig.setAuthServerUrl(authServerUrl);
             } else {
-                System.out.println("WARNING: Environment variable AUTH_SERVER_URL not set.");
+                log.warn("Environment variable AUTH_SERVER_URL not set.");
             }
-            KeycloakDeployment kd = KeycloakDeploymentBuilder.build(adapterConfig);
-            deploymentContext = new AdapterDeploymentContext(kd);
-            System.out.println("Keycloak is using a per-deployment configuration.");
-
-            nodesRegistrationManagement = new NodesRegistrationManagement();
+            if (Boolean.parseBoolean(System.getenv("BEARER_ONLY"))) {
+                adapterConfig.setBearerOnly(true);
+            }
+            configure(adapterConfig);
         }
     }
 
+    private void configure(AdapterConfig adapterConfig) {
+        KeycloakDeployment kd = KeycloakDeploymentBuilder.build(adapterConfig);
+        deploymentContext = new AdapterDeploymentContext(kd);
+        log.debug("Keycloak is using a per-deployment configuration.");
+
+        nodesRegistrationManagement = new NodesRegistrationManagement();
+        deployment = kd;
+        bearerOnly = kd.isBearerOnly();
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+package solutions.linked.jena.auth;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.shiro.cache.Cache;
+
+/**
+ * Bounded in-memory {@link Cache}. When it is full, arbitrary entries are dropped
+ * until an eighth of it is free again.
+ */
+class LocalCache<K, V> implements Cache<K, V> {
+
+    private final int maxSize;
+    private final Map<K, V> entries = new ConcurrentHashMap<>();
+
+    LocalCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public V get(K key) {
+        return key == null ? null : entries.get(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        if (maxSize <= 0) {
+            return null;
+        }
+        if (entries.size() >= maxSize && !entries.containsKey(key)) {
+            evict();
+        }
+        return entries.put(key, value);
+    }
+
+    @Override
+    public V remove(K key) {
+        return key == null ? null : entries.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public Set<K> keys() {
+        return Collections.unmodifiableSet(new HashSet<>(entries.keySet()));
+    }
+
+    @Override
+    public Collection<V> values() {
+        return Collections.unmodifiableList(new ArrayList<>(entries.values()));
+    }
+
+    private synchronized void evict() {
+        Iterator<K> keys = entries.keySet().iterator();
+        while (entries.size() > maxSize - Math.max(1, maxSize / 8) && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+}
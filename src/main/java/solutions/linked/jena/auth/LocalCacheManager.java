@@ -0,0 +1,25 @@
+package solutions.linked.jena.auth;
+
+import org.apache.shiro.cache.AbstractCacheManager;
+import org.apache.shiro.cache.Cache;
+
+/**
+ * Creates bounded in-memory caches, of at most {@code maxSize} entries each.
+ */
+public class LocalCacheManager extends AbstractCacheManager {
+
+    private int maxSize = 10000;
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    protected Cache createCache(String name) {
+        return new LocalCache<>(maxSize);
+    }
+}
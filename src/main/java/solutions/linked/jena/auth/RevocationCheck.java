@@ -0,0 +1,10 @@
+package solutions.linked.jena.auth;
+
+/**
+ * Tells whether a token that was issued and verified has been revoked since, e.g.
+ * by its {@code jti} or by a not-before time of its principal.
+ */
+public interface RevocationCheck {
+
+    boolean isRevoked(JWTClaims claims);
+}
@@ -0,0 +1,35 @@
+package solutions.linked.jena.auth;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.apache.http.HttpHeaders;
+import org.apache.shiro.web.filter.session.NoSessionCreationFilter;
+import org.apache.shiro.web.util.WebUtils;
+
+/**
+ * Disables session creation for requests that come with their credentials, a
+ * bearer token or basic authentication, so that their subject is built from the
+ * credentials on every request and never stored in a session. Other requests,
+ * like those of the browser login flow of the Keycloak adapter, may still create
+ * sessions.
+ *
+ * In the filter chains in {@code shiro.ini} the filter has to come before the
+ * authenticating filters.
+ */
+public class StatelessRequestFilter extends NoSessionCreationFilter {
+
+    @Override
+    protected boolean onPreHandle(ServletRequest request, ServletResponse response, Object mappedValue) throws Exception {
+        return !hasCredentials(request) || super.onPreHandle(request, response, mappedValue);
+    }
+
+    private static boolean hasCredentials(ServletRequest request) {
+        String authHeader = WebUtils.toHttp(request).getHeader(HttpHeaders.AUTHORIZATION);
+        if (authHeader == null) {
+            return false;
+        }
+        String scheme = authHeader.trim().toLowerCase();
+        return scheme.startsWith("bearer") || scheme.startsWith("basic");
+    }
+}
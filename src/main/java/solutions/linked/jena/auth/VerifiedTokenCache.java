@@ -0,0 +1,149 @@
+package solutions.linked.jena.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.extern.slf4j.Slf4j;
+import solutions.linked.jena.Settings;
+
+/**
+ * Bounded cache of the claims of verified tokens, so that repeated requests with
+ * the same token skip verifying it. Entries are keyed by the SHA-256 digest of
+ * the token and expire with it.
+ *
+ * If a {@link RevocationCheck} is set, it is asked about every token put and
+ * every hit. When the cache is full, expired entries and then arbitrary ones are
+ * dropped until an eighth of it is free again.
+ */
+@Slf4j
+public class VerifiedTokenCache {
+
+    private final int maxSize;
+    private final Map<String, JWTClaims> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private volatile RevocationCheck revocationCheck;
+
+    /**
+     * @param maxSize maximum number of tokens kept, 0 to disable caching
+     */
+    public VerifiedTokenCache(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Negative maximum size " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * A cache of at most {@code TOKEN_CACHE_MAX_SIZE} tokens, 10000 by default.
+     */
+    public static VerifiedTokenCache fromEnvironment() {
+        return new VerifiedTokenCache(Settings.getInt("TOKEN_CACHE_MAX_SIZE", 10000, 0));
+    }
+
+    public void setRevocationCheck(RevocationCheck revocationCheck) {
+        this.revocationCheck = revocationCheck;
+    }
+
+    /**
+     * @return the claims of the token, {@code null} if it isn't cached
+     * @throws JWTAuthException if the token has been revoked
+     */
+    public JWTClaims get(String token) {
+        if (maxSize == 0) {
+            misses.increment();
+            return null;
+        }
+        String key = digest(token);
+        JWTClaims claims = entries.get(key);
+        if (claims == null || claims.getExpiresAt() <= nowSeconds()) {
+            if (claims != null) {
+                entries.remove(key, claims);
+            }
+            misses.increment();
+            return null;
+        }
+        checkRevocation(key, claims);
+        hits.increment();
+        return claims;
+    }
+
+    /**
+     * Caches the claims of a token that has just been verified.
+     *
+     * @throws JWTAuthException if the token has been revoked
+     */
+    public void put(String token, JWTClaims claims) {
+        String key = maxSize == 0 ? null : digest(token);
+        checkRevocation(key, claims);
+        if (key == null || claims.getExpiresAt() <= nowSeconds()) {
+            return;
+        }
+        if (entries.size() >= maxSize) {
+            evict();
+        }
+        entries.put(key, claims);
+    }
+
+    private void checkRevocation(String key, JWTClaims claims) {
+        RevocationCheck check = revocationCheck;
+        if (check != null && check.isRevoked(claims)) {
+            if (key != null) {
+                entries.remove(key);
+            }
+            throw JWTAuthException.revokedToken();
+        }
+    }
+
+    /**
+     * Forgets all tokens, e.g. after revocations the {@link RevocationCheck} doesn't know about.
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private synchronized void evict() {
+        if (entries.size() < maxSize) {
+            return;
+        }
+        long now = nowSeconds();
+        entries.values().removeIf(claims -> claims.getExpiresAt() <= now);
+        Iterator<String> keys = entries.keySet().iterator();
+        while (entries.size() > maxSize - Math.max(1, maxSize / 8) && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+        log.debug("Token cache full, {} tokens left after eviction, {} hits, {} misses", entries.size(), hits.sum(), misses.sum());
+    }
+
+    private static long nowSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package solutions.linked.jena.security;
+
+import org.apache.jena.rdf.model.*;
+
+/**
+ * Vocabulary definitions from http://www.w3.org/ns/auth/acl# as far as they are used by
+ * the security graph.
+ */
+public class Acl {
+    /** <p>The RDF model that holds the vocabulary terms</p> */
+    private static final Model M_MODEL = ModelFactory.createDefaultModel();
+
+    /** <p>The namespace of the vocabulary as a string</p> */
+    public static final String NS = "http://www.w3.org/ns/auth/acl#";
+
+    /** <p>The namespace of the vocabulary as a string</p>
+     * @return namespace as String
+     * @see #NS */
+    public static String getURI() {return NS;}
+
+    /** <p>The namespace of the vocabulary as a resource</p> */
+    public static final Resource NAMESPACE = M_MODEL.createResource( NS );
+
+    /** <p>A class of persons or social entities to being given the right.</p> */
+    public static final Property agentClass = M_MODEL.createProperty( "http://www.w3.org/ns/auth/acl#agentClass" );
+
+    /** <p>A mode of access such as read or write.</p> */
+    public static final Property mode = M_MODEL.createProperty( "http://www.w3.org/ns/auth/acl#mode" );
+
+    /** <p>An element of access control, allowing agent to agents access of some kind to resources.</p> */
+    public static final Resource Authorization = M_MODEL.createResource( "http://www.w3.org/ns/auth/acl#Authorization" );
+
+}
@@ -0,0 +1,130 @@
+package solutions.linked.jena.security;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.jena.permissions.SecurityEvaluator.Action;
+
+/**
+ * Immutable, compiled form of the {@code acl:Authorization}s in a security graph.
+ *
+ * Grants are held per {@code fo:agentUserName} plus one public tier for
+ * {@code acl:agentClass foaf:Agent}. The {@code fo:accessTo} patterns of each are
+ * compiled into a {@link GrantMatcher} with their {@code acl:mode}s as bitmasks,
+ * so a check is a map lookup and one pass over the segments of the graph IRI per
+ * tier. Instances are maintained by {@link AclIndexMaintainer}.
+ */
+final class AclIndex {
+
+    static final int READ = 1;
+
+    static final int CREATE = 1 << 1;
+
+    static final int DELETE = 1 << 2;
+
+    static final int UPDATE = 1 << 3;
+
+    static final int WRITE = CREATE | DELETE | UPDATE;
+
+    static final Grant[] NO_GRANTS = new Grant[0];
+
+    static final AclIndex EMPTY = new AclIndex(Collections.emptyMap(), GrantMatcher.EMPTY);
+
+    private final Map<String, GrantMatcher> userGrants;
+
+    private final GrantMatcher publicGrants;
+
+    private AclIndex(Map<String, GrantMatcher> userGrants, GrantMatcher publicGrants) {
+        this.userGrants = userGrants;
+        this.publicGrants = publicGrants;
+    }
+
+    /**
+     * Returns a copy of this index where the grants of the given users, and the
+     * public tier if not {@code null}, are replaced. All other users share their
+     * compiled grants with this index.
+     */
+    AclIndex with(Map<String, Grant[]> changedUsers, Grant[] changedPublicGrants) {
+        Map<String, GrantMatcher> users = new HashMap<>(userGrants);
+        changedUsers.forEach((username, grants) -> {
+            if (grants.length == 0) {
+                users.remove(username);
+            } else {
+                users.put(username, new GrantMatcher(grants));
+            }
+        });
+        return new AclIndex(users, changedPublicGrants != null ? new GrantMatcher(changedPublicGrants) : publicGrants);
+    }
+
+    boolean hasAccess(String username, String graphIRI, Action action) {
+        int required = bit(action);
+        AntPattern.Path path = AntPattern.path(graphIRI);
+        GrantMatcher matcher = userGrants.get(username);
+        return (matcher != null && (matcher.modes(path) & required) != 0) ||
+                (publicGrants.modes(path) & required) != 0;
+    }
+
+    /**
+     * @return the union of the modes granted to the user, including the public tier
+     */
+    int modes(String username, AntPattern.Path path) {
+        GrantMatcher matcher = userGrants.get(username);
+        int modes = matcher == null ? 0 : matcher.modes(path);
+        return publicGrants.isEmpty() ? modes : modes | publicGrants.modes(path);
+    }
+
+    static int bit(Action action) {
+        switch (action) {
+            case Read:
+                return READ;
+            case Create:
+                return CREATE;
+            case Delete:
+                return DELETE;
+            case Update:
+                return UPDATE;
+            default:
+                return 0;
+        }
+    }
+
+    static int modeBits(String permission) {
+        switch (permission.toUpperCase()) {
+            case "READ" :
+                return READ;
+            case "CREATE" :
+                return CREATE;
+            case "DELETE" :
+                return DELETE;
+            case "UPDATE" :
+                return UPDATE;
+            case "WRITE" :
+                return WRITE;
+            default: return 0;
+        }
+    }
+
+    /**
+     * One {@code fo:accessTo} pattern together with the modes granted for it.
+     */
+    static final class Grant {
+
+        private final AntPattern pattern;
+
+        private final int modes;
+
+        Grant(AntPattern pattern, int modes) {
+            this.pattern = pattern;
+            this.modes = modes;
+        }
+
+        AntPattern getPattern() {
+            return pattern;
+        }
+
+        int getModes() {
+            return modes;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package solutions.linked.jena.security;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.sparql.core.DatasetChanges;
+import org.apache.jena.sparql.core.QuadAction;
+import org.apache.jena.sparql.vocabulary.FOAF;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.vocabulary.RDF;
+
+/**
+ * Keeps an {@link AclIndex} in line with the security graph.
+ *
+ * The triples describing {@code acl:Authorization}s are mirrored per authorization
+ * resource. Changes reported through {@link DatasetChanges} are applied to that
+ * mirror and only the grants of the users (or the public tier) touched by the
+ * changed authorizations are compiled again; all other users keep their grants.
+ * Triples with other predicates are ignored.
+ */
+@Slf4j
+class AclIndexMaintainer implements DatasetChanges {
+
+    private static final Node TYPE = RDF.type.asNode();
+    private static final Node AUTHORIZATION = Acl.Authorization.asNode();
+    private static final Node AGENT_USER_NAME = Ontology.agentUserName.asNode();
+    private static final Node AGENT_CLASS = Acl.agentClass.asNode();
+    private static final Node AGENT = FOAF.Agent.asNode();
+    private static final Node ACCESS_TO = Ontology.accessTo.asNode();
+    private static final Node MODE = Acl.mode.asNode();
+
+    private static final Property[] RELEVANT_PROPERTIES = {
+            RDF.type, Ontology.agentUserName, Acl.agentClass, Ontology.accessTo, Acl.mode
+    };
+
+    private final Consumer<Changes> onChange;
+
+    private final Map<Node, Authorization> authorizations = new HashMap<>();
+
+    private final Map<String, Set<Authorization>> authorizationsByUser = new HashMap<>();
+
+    private final Set<Authorization> publicAuthorizations = new LinkedHashSet<>();
+
+    // changed triples in commit order, paired with whether they were added
+    private final List<Triple> changed = new ArrayList<>();
+
+    private final List<Boolean> additions = new ArrayList<>();
+
+    private final Set<Authorization> touched = new LinkedHashSet<>();
+
+    private volatile AclIndex index;
+
+    /**
+     * @param onChange told which users had their grants changed after each applied batch
+     */
+    AclIndexMaintainer(Consumer<Changes> onChange) {
+        this.onChange = onChange;
+    }
+
+    /**
+     * @return the current index or {@code null} if {@link #load(Model)} has not been called yet
+     */
+    AclIndex current() {
+        return index;
+    }
+
+    /**
+     * Mirrors the authorizations of the whole security model and compiles them. The
+     * caller is responsible for providing a read transaction if the model requires one.
+     */
+    synchronized AclIndex load(Model securityModel) {
+        authorizations.clear();
+        authorizationsByUser.clear();
+        publicAuthorizations.clear();
+        touched.clear();
+        for (Property property : RELEVANT_PROPERTIES) {
+            ExtendedIterator<Triple> triples = securityModel.getGraph().find(Node.ANY, property.asNode(), Node.ANY);
+            try {
+                while (triples.hasNext()) {
+                    apply(triples.next(), true);
+                }
+            } finally {
+                triples.close();
+            }
+        }
+        touched.clear();
+        authorizations.values().forEach(Authorization::settle);
+
+        Map<String, AclIndex.Grant[]> userGrants = new HashMap<>(authorizationsByUser.size() * 2);
+        authorizationsByUser.forEach((username, userAuthorizations) ->
+                userGrants.put(username, compile(userAuthorizations)));
+        index = AclIndex.EMPTY.with(userGrants, compile(publicAuthorizations));
+        log.debug("Compiled " + authorizations.size() + " authorizations for " + userGrants.size() + " users");
+        return index;
+    }
+
+    @Override
+    public synchronized void start() {
+        reset();
+    }
+
+    @Override
+    public synchronized void change(QuadAction action, Node g, Node s, Node p, Node o) {
+        if (!isRelevant(p)) {
+            return;
+        }
+        if (action == QuadAction.ADD || action == QuadAction.DELETE) {
+            changed.add(Triple.create(s, p, o));
+            additions.add(action == QuadAction.ADD);
+        }
+    }
+
+    @Override
+    public synchronized void finish() {
+        if (index == null) {
+            // not loaded yet, loading will see the committed state anyway
+            reset();
+            return;
+        }
+        for (int i = 0; i < changed.size(); i++) {
+            apply(changed.get(i), additions.get(i));
+        }
+        reset();
+        if (touched.isEmpty()) {
+            return;
+        }
+
+        Set<String> users = new HashSet<>();
+        boolean publicTier = false;
+        for (Authorization authorization : touched) {
+            users.addAll(authorization.usernames);
+            users.addAll(authorization.previousUsernames);
+            publicTier |= authorization.isPublic || authorization.wasPublic;
+            authorization.settle();
+            if (authorization.isEmpty()) {
+                authorizations.remove(authorization.node);
+            }
+        }
+        touched.clear();
+
+        Map<String, AclIndex.Grant[]> userGrants = new HashMap<>();
+        for (String username : users) {
+            Set<Authorization> userAuthorizations = authorizationsByUser.get(username);
+            userGrants.put(username, userAuthorizations == null ? AclIndex.NO_GRANTS : compile(userAuthorizations));
+        }
+        index = index.with(userGrants, publicTier ? compile(publicAuthorizations) : null);
+        log.debug("Recompiled authorizations of " + users.size() + " users" + (publicTier ? " and the public tier" : ""));
+        onChange.accept(new Changes(users, publicTier));
+    }
+
+    @Override
+    public synchronized void reset() {
+        changed.clear();
+        additions.clear();
+    }
+
+    private static boolean isRelevant(Node p) {
+        return TYPE.equals(p) || AGENT_USER_NAME.equals(p) || AGENT_CLASS.equals(p) ||
+                ACCESS_TO.equals(p) || MODE.equals(p);
+    }
+
+    private void apply(Triple triple, boolean add) {
+        Node p = triple.getPredicate();
+        Node o = triple.getObject();
+        Authorization authorization = authorizations.get(triple.getSubject());
+        if (authorization == null) {
+            if (!add) {
+                return;
+            }
+            authorization = new Authorization(triple.getSubject());
+        }
+
+        boolean modified = false;
+        if (TYPE.equals(p)) {
+            if (AUTHORIZATION.equals(o) && authorization.isAuthorization != add) {
+                authorization.isAuthorization = add;
+                modified = true;
+            }
+        } else if (AGENT_CLASS.equals(p)) {
+            if (AGENT.equals(o) && authorization.isPublic != add) {
+                authorization.isPublic = add;
+                modified = true;
+                if (add) {
+                    publicAuthorizations.add(authorization);
+                } else {
+                    publicAuthorizations.remove(authorization);
+                }
+            }
+        } else if (AGENT_USER_NAME.equals(p)) {
+            String username = lexicalForm(o);
+            if (username != null && (add ? authorization.usernames.add(username) : authorization.usernames.remove(username))) {
+                modified = true;
+                if (add) {
+                    authorizationsByUser.computeIfAbsent(username, k -> new LinkedHashSet<>()).add(authorization);
+                } else {
+                    Set<Authorization> userAuthorizations = authorizationsByUser.get(username);
+                    userAuthorizations.remove(authorization);
+                    if (userAuthorizations.isEmpty()) {
+                        authorizationsByUser.remove(username);
+                    }
+                }
+            }
+        } else if (ACCESS_TO.equals(p)) {
+            String pattern = lexicalForm(o);
+            modified = pattern != null && (add ? authorization.patterns.add(pattern) : authorization.patterns.remove(pattern));
+        } else if (MODE.equals(p)) {
+            modified = o.isURI() && (add ? authorization.modes.add(o.getLocalName()) : authorization.modes.remove(o.getLocalName()));
+        }
+
+        if (modified) {
+            authorizations.putIfAbsent(authorization.node, authorization);
+            authorization.grants = null;
+            touched.add(authorization);
+        }
+    }
+
+    private static AclIndex.Grant[] compile(Set<Authorization> authorizations) {
+        List<AclIndex.Grant> grants = new ArrayList<>();
+        for (Authorization authorization : authorizations) {
+            for (AclIndex.Grant grant : authorization.grants()) {
+                grants.add(grant);
+            }
+        }
+        return grants.toArray(AclIndex.NO_GRANTS);
+    }
+
+    private static String lexicalForm(Node node) {
+        if (node.isLiteral()) {
+            return node.getLiteralLexicalForm();
+        }
+        if (node.isURI()) {
+            return node.getURI();
+        }
+        return null;
+    }
+
+    /**
+     * The users, and whether the public tier, whose grants were compiled again.
+     */
+    static final class Changes {
+
+        private final Set<String> usernames;
+
+        private final boolean publicTier;
+
+        private Changes(Set<String> usernames, boolean publicTier) {
+            this.usernames = usernames;
+            this.publicTier = publicTier;
+        }
+
+        Set<String> getUsernames() {
+            return usernames;
+        }
+
+        boolean isPublicTier() {
+            return publicTier;
+        }
+    }
+
+    /**
+     * Mirror of the relevant triples of one authorization resource.
+     */
+    private static final class Authorization {
+
+        private final Node node;
+
+        private boolean isAuthorization;
+
+        private boolean isPublic;
+
+        private final Set<String> usernames = new LinkedHashSet<>();
+
+        private final Set<String> patterns = new LinkedHashSet<>();
+
+        private final Set<String> modes = new HashSet<>();
+
+        // state as of the last compilation, to find the users that lost a grant
+        private boolean wasPublic;
+
+        private Set<String> previousUsernames = new HashSet<>();
+
+        private AclIndex.Grant[] grants;
+
+        private Authorization(Node node) {
+            this.node = node;
+        }
+
+        private AclIndex.Grant[] grants() {
+            if (grants == null) {
+                grants = compileGrants();
+            }
+            return grants;
+        }
+
+        private AclIndex.Grant[] compileGrants() {
+            int bits = 0;
+            for (String mode : modes) {
+                bits |= AclIndex.modeBits(mode);
+            }
+            if (!isAuthorization || bits == 0) {
+                return AclIndex.NO_GRANTS;
+            }
+            AclIndex.Grant[] compiled = new AclIndex.Grant[patterns.size()];
+            int i = 0;
+            for (String pattern : patterns) {
+                compiled[i++] = new AclIndex.Grant(new AntPattern(pattern), bits);
+            }
+            return compiled;
+        }
+
+        private void settle() {
+            wasPublic = isPublic;
+            previousUsernames = new HashSet<>(usernames);
+        }
+
+        private boolean isEmpty() {
+            return !isAuthorization && !isPublic && usernames.isEmpty() && patterns.isEmpty() && modes.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package solutions.linked.jena.security;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ * A pre-tokenized Ant-style pattern as used in {@code fo:accessTo}.
+ *
+ * Patterns are matched by a {@link GrantMatcher} like
+ * {@link org.apache.shiro.util.AntPathMatcher#match(String, String)} with the
+ * default {@code /} separator matches them, but the pattern is split only once and
+ * the tested IRI only once per check (see {@link Path}), no matter how many
+ * patterns it is matched against.
+ */
+final class AntPattern {
+
+    static final String SEPARATOR = "/";
+
+    static final String DOUBLE_STAR = "**";
+
+    private final String pattern;
+
+    private final String[] dirs;
+
+    private final boolean leadingSeparator;
+
+    private final boolean trailingSeparator;
+
+    AntPattern(String pattern) {
+        this.pattern = pattern;
+        this.dirs = tokenize(pattern);
+        this.leadingSeparator = pattern.startsWith(SEPARATOR);
+        this.trailingSeparator = pattern.endsWith(SEPARATOR);
+    }
+
+    String[] getDirs() {
+        return dirs;
+    }
+
+    boolean hasLeadingSeparator() {
+        return leadingSeparator;
+    }
+
+    boolean hasTrailingSeparator() {
+        return trailingSeparator;
+    }
+
+    /**
+     * Splits an IRI once so it can be matched against any number of patterns.
+     */
+    static Path path(String iri) {
+        return new Path(iri);
+    }
+
+    /**
+     * Matches a single path segment against a segment pattern, where {@code *}
+     * stands for zero or more characters and {@code ?} for exactly one.
+     */
+    static boolean matchSegment(String pattern, String str) {
+        int p = 0;
+        int s = 0;
+        int starP = -1;
+        int starS = -1;
+        while (s < str.length()) {
+            if (p < pattern.length()) {
+                char c = pattern.charAt(p);
+                if (c == '*') {
+                    starP = p++;
+                    starS = s;
+                    continue;
+                }
+                if (c == '?' || c == str.charAt(s)) {
+                    p++;
+                    s++;
+                    continue;
+                }
+            }
+            if (starP < 0) {
+                return false;
+            }
+            p = starP + 1;
+            s = ++starS;
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    /**
+     * Splits on the separator, trimming tokens and dropping empty ones, just like
+     * Shiro's {@code StringUtils.tokenizeToStringArray}.
+     */
+    static String[] tokenize(String value) {
+        StringTokenizer tokenizer = new StringTokenizer(value, SEPARATOR);
+        List<String> tokens = new ArrayList<>();
+        while (tokenizer.hasMoreTokens()) {
+            String token = tokenizer.nextToken().trim();
+            if (token.length() > 0) {
+                tokens.add(token);
+            }
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+    /**
+     * An IRI split into its segments.
+     */
+    static final class Path {
+
+        private final String value;
+
+        private final String[] dirs;
+
+        private final boolean leadingSeparator;
+
+        private final boolean trailingSeparator;
+
+        private Path(String value) {
+            this.value = value;
+            this.dirs = tokenize(value);
+            this.leadingSeparator = value.startsWith(SEPARATOR);
+            this.trailingSeparator = value.endsWith(SEPARATOR);
+        }
+
+        String[] getDirs() {
+            return dirs;
+        }
+
+        boolean hasLeadingSeparator() {
+            return leadingSeparator;
+        }
+
+        boolean hasTrailingSeparator() {
+            return trailingSeparator;
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package solutions.linked.jena.security;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.permissions.SecurityEvaluator;
+
+/**
+ * A {@link SecurityEvaluator} that can decide on many graphs at once, resolving
+ * the principal and its authorizations only once per batch.
+ *
+ * Results must be the same as calling {@link #evaluate(Object, Set, Node)} for
+ * each graph.
+ */
+public interface BulkSecurityEvaluator extends SecurityEvaluator {
+
+    /**
+     * @return a set where bit {@code i} is set if all actions are permitted on {@code graphIRIs.get(i)}
+     */
+    BitSet evaluate(Object principal, Set<Action> actions, List<Node> graphIRIs);
+
+    /**
+     * Lazily filters the graphs on which all actions are permitted.
+     */
+    Iterator<Node> filter(Object principal, Set<Action> actions, Iterator<Node> graphIRIs);
+}
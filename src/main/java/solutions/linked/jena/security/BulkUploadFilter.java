@@ -0,0 +1,81 @@
+package solutions.linked.jena.security;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.jena.atlas.web.ContentType;
+import org.apache.jena.fuseki.server.Operation;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.tdb2.sys.TDBInternal;
+import org.apache.shiro.web.servlet.OncePerRequestFilter;
+import org.apache.shiro.web.util.WebUtils;
+import solutions.linked.jena.Settings;
+
+/**
+ * Takes large Graph Store Protocol POST requests to a secured dataset off the
+ * per-quad path of Fuseki and loads them with a {@link SecuredBulkLoader}.
+ * Only requests to a read-write Graph Store Protocol endpoint of the dataset are
+ * taken over. Smaller requests and everything else go on to Fuseki.
+ *
+ * Requests are considered large from {@code BULK_UPLOAD_MIN_BYTES} bytes, which
+ * defaults to 10 MiB. In the filter chain of the data service in {@code shiro.ini}
+ * the filter has to come after the authenticating filters.
+ */
+@Slf4j
+public class BulkUploadFilter extends OncePerRequestFilter {
+
+    private static final long BULK_UPLOAD_MIN_BYTES = Settings.getLong("BULK_UPLOAD_MIN_BYTES", 10L * 1024 * 1024, 0);
+
+    @Override
+    protected void doFilterInternal(ServletRequest req, ServletResponse res, FilterChain chain) throws ServletException, IOException {
+        HttpServletRequest request = WebUtils.toHttp(req);
+        HttpServletResponse response = WebUtils.toHttp(res);
+        if (!request.getMethod().equalsIgnoreCase("POST") || request.getContentLengthLong() < BULK_UPLOAD_MIN_BYTES ||
+                request.getContentType() == null) {
+            chain.doFilter(req, res);
+            return;
+        }
+        Lang lang = RDFLanguages.contentTypeToLang(ContentType.create(request.getContentType()).getContentType());
+        SecuredDatasetGraph dataset = securedDataset(request);
+        String graph = request.getParameter("graph");
+        boolean targetGiven = graph != null || request.getParameter("default") != null;
+        if (lang == null || dataset == null || (targetGiven && !RDFLanguages.isTriples(lang)) ||
+                (graph != null && dataset.isSecurityGraph(NodeFactory.createURI(graph)))) {
+            chain.doFilter(req, res);
+            return;
+        }
+        Node graphName = graph == null ? null : NodeFactory.createURI(graph);
+        try {
+            SecuredBulkLoader.LoadResult result = new SecuredBulkLoader(dataset).load(request.getInputStream(), lang, graphName);
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType("application/json");
+            response.setCharacterEncoding("UTF-8");
+            PrintWriter writer = response.getWriter();
+            writer.printf("{ \"count\" : %d , \"tripleCount\" : %d , \"quadCount\" : %d }%n",
+                    result.getTripleCount() + result.getQuadCount(), result.getTripleCount(), result.getQuadCount());
+            writer.flush();
+        } catch (AccessDeniedException e) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN, e.getMessage());
+        } catch (RiotException e) {
+            log.debug("Bulk upload failed to parse: " + e.getMessage(), e);
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    // the dataset of a request to a read-write Graph Store Protocol endpoint, if secured and backed by TDB2
+    private SecuredDatasetGraph securedDataset(HttpServletRequest request) {
+        SecuredDatasetGraph dataset = GraphStoreRequests.securedDataset(request, Operation.GSP_RW);
+        return dataset != null && TDBInternal.isTDB2(dataset.getBase()) ? dataset : null;
+    }
+}
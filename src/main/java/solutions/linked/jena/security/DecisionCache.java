@@ -0,0 +1,224 @@
+package solutions.linked.jena.security;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded cache of access decisions shared by all requests.
+ *
+ * Principals and graph IRIs are interned to ints, which together with the action
+ * bit are packed into a single {@code long} key. Entries live in a fixed size,
+ * striped, 4-way set associative table of primitive arrays, so a hit neither
+ * allocates nor boxes. When all slots of a set are taken the entry closest to
+ * expiry is evicted.
+ *
+ * Ids are never reused within a {@link Generation}. Invalidating a principal
+ * interns it anew, which makes all its entries unreachable without touching those
+ * of other principals; a decision computed before the invalidation and put
+ * afterwards is stored under the old id and thus never returned. Invalidating
+ * everything starts a new generation.
+ *
+ * With a maximum size of 0 nothing is cached and no ids are interned.
+ */
+final class DecisionCache {
+
+    static final int UNKNOWN = -1;
+
+    static final int DENIED = 0;
+
+    static final int GRANTED = 1;
+
+    private static final int WAYS = 4;
+
+    private static final int MAX_STRIPES = 64;
+
+    private static final int ACTION_BITS = 4;
+
+    private static final int GRAPH_BITS = 32;
+
+    private static final int MAX_PRINCIPAL_ID = (1 << (63 - GRAPH_BITS - ACTION_BITS)) - 1;
+
+    private final int capacity;
+
+    private final long ttlNanos;
+
+    private final long origin = System.nanoTime();
+
+    private volatile Generation generation;
+
+    /**
+     * @param maxSize maximum number of decisions kept, rounded up to a power of two,
+     * 0 to disable caching
+     * @param ttl how long a decision is kept
+     */
+    DecisionCache(int maxSize, long ttl, TimeUnit unit) {
+        this.capacity = maxSize <= 0 ? 0 : Integer.highestOneBit(Math.max(WAYS, maxSize - 1)) << 1;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.generation = new Generation();
+    }
+
+    /**
+     * The generation to use for one lookup and, on a miss, the following put.
+     */
+    Generation generation() {
+        return generation;
+    }
+
+    /**
+     * Forgets all decisions about the given principal.
+     */
+    void invalidate(String principal) {
+        generation.principalIds.remove(principal);
+    }
+
+    void invalidateAll() {
+        generation = new Generation();
+    }
+
+    private long now() {
+        return System.nanoTime() - origin;
+    }
+
+    private static long key(int principalId, int graphId, int actionBit) {
+        return ((long) principalId << (GRAPH_BITS + ACTION_BITS)) |
+                ((graphId & 0xFFFFFFFFL) << ACTION_BITS) |
+                (Integer.numberOfTrailingZeros(actionBit) & ((1 << ACTION_BITS) - 1));
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    final class Generation {
+
+        private final ConcurrentHashMap<String, Integer> principalIds = new ConcurrentHashMap<>();
+
+        private final ConcurrentHashMap<String, Integer> graphIds = new ConcurrentHashMap<>();
+
+        private final AtomicInteger principalCounter = new AtomicInteger();
+
+        private final AtomicInteger graphCounter = new AtomicInteger();
+
+        private final Stripe[] stripes;
+
+        private final int setsPerStripe;
+
+        private Generation() {
+            int sets = capacity / WAYS;
+            int stripeCount = Math.min(MAX_STRIPES, sets);
+            this.setsPerStripe = stripeCount == 0 ? 0 : sets / stripeCount;
+            this.stripes = new Stripe[stripeCount];
+            for (int i = 0; i < stripeCount; i++) {
+                stripes[i] = new Stripe(setsPerStripe * WAYS);
+            }
+        }
+
+        int principalId(String principal) {
+            if (stripes.length == 0) {
+                return 0;
+            }
+            Integer id = principalIds.get(principal);
+            if (id == null) {
+                id = principalIds.computeIfAbsent(principal, k -> principalCounter.incrementAndGet());
+            }
+            return id;
+        }
+
+        int graphId(String graph) {
+            if (stripes.length == 0) {
+                return 0;
+            }
+            Integer id = graphIds.get(graph);
+            if (id == null) {
+                id = graphIds.computeIfAbsent(graph, k -> graphCounter.incrementAndGet());
+            }
+            return id;
+        }
+
+        /**
+         * @return {@link #GRANTED}, {@link #DENIED} or {@link #UNKNOWN}
+         */
+        int get(int principalId, int graphId, int actionBit) {
+            if (stripes.length == 0) {
+                return UNKNOWN;
+            }
+            long key = key(principalId, graphId, actionBit);
+            int hash = hash(key);
+            return stripe(hash).get(key, set(hash), now());
+        }
+
+        void put(int principalId, int graphId, int actionBit, boolean granted) {
+            if (stripes.length == 0) {
+                return;
+            }
+            if (principalId > MAX_PRINCIPAL_ID || graphId < 0 ||
+                    principalIds.size() + graphIds.size() > capacity * 4) {
+                // ids of principals and graphs no longer cached are only dropped
+                // by starting over, which is done once there are too many of them
+                if (generation == this) {
+                    invalidateAll();
+                }
+                return;
+            }
+            long key = key(principalId, graphId, actionBit);
+            int hash = hash(key);
+            stripe(hash).put(key, set(hash), now() + ttlNanos, granted);
+        }
+
+        private Stripe stripe(int hash) {
+            return stripes[(hash >>> 16) % stripes.length];
+        }
+
+        private int set(int hash) {
+            return ((hash & 0x7FFFFFFF) % setsPerStripe) * WAYS;
+        }
+    }
+
+    private static final class Stripe {
+
+        // 0 marks a free slot, keys are never 0 as principal ids start at 1
+        private final long[] keys;
+
+        // expiry in nanos since origin, shifted left by one, lowest bit is the decision
+        private final long[] values;
+
+        private Stripe(int size) {
+            keys = new long[size];
+            values = new long[size];
+        }
+
+        private synchronized int get(long key, int set, long now) {
+            for (int i = set; i < set + WAYS; i++) {
+                if (keys[i] == key) {
+                    long value = values[i];
+                    if ((value >>> 1) <= now) {
+                        keys[i] = 0;
+                        return UNKNOWN;
+                    }
+                    return (int) (value & 1);
+                }
+            }
+            return UNKNOWN;
+        }
+
+        private synchronized void put(long key, int set, long expiresAt, boolean granted) {
+            int victim = -1;
+            long victimExpiry = Long.MAX_VALUE;
+            for (int i = set; i < set + WAYS; i++) {
+                if (keys[i] == key) {
+                    victim = i;
+                    break;
+                }
+                long expiry = keys[i] == 0 ? Long.MIN_VALUE : values[i] >>> 1;
+                if (expiry < victimExpiry) {
+                    victim = i;
+                    victimExpiry = expiry;
+                }
+            }
+            keys[victim] = key;
+            values[victim] = (expiresAt << 1) | (granted ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package solutions.linked.jena.security;
+
+import java.util.function.Supplier;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.permissions.SecurityEvaluator.Action;
+
+/**
+ * Decisions taken within one transaction, so that a query touching a graph many
+ * times has it evaluated once per action.
+ *
+ * Graph nodes are kept in a small open addressing table together with a bit per
+ * known action and a bit per permitted action. The principal is resolved on first
+ * use. Instances are confined to the thread running the transaction.
+ *
+ * Bulk writes usually add many quads to one graph after the other, the slot of
+ * the graph looked up last is kept to spare hashing its node again.
+ */
+final class DecisionMemo {
+
+    static final int UNKNOWN = -1;
+
+    static final int DENIED = 0;
+
+    static final int GRANTED = 1;
+
+    // beyond that many graphs, further decisions are not remembered
+    private static final int MAX_SIZE = 1 << 16;
+
+    private final Supplier<Object> principalSupplier;
+
+    private Object principal;
+
+    private Node[] keys = new Node[16];
+
+    // lower 4 bits: actions decided, upper 4 bits: actions permitted
+    private byte[] values = new byte[16];
+
+    private int size;
+
+    private Node lastGraph;
+
+    private int lastSlot;
+
+    DecisionMemo(Supplier<Object> principalSupplier) {
+        this.principalSupplier = principalSupplier;
+    }
+
+    Object getPrincipal() {
+        if (principal == null) {
+            principal = principalSupplier.get();
+        }
+        return principal;
+    }
+
+    int get(Node graph, Action action) {
+        int bit = bit(action);
+        int i = slot(graph);
+        if (keys[i] == null || (values[i] & bit) == 0) {
+            return UNKNOWN;
+        }
+        return (values[i] & (bit << 4)) != 0 ? GRANTED : DENIED;
+    }
+
+    void put(Node graph, Action action, boolean permitted) {
+        int i = slot(graph);
+        if (keys[i] == null) {
+            if (size >= MAX_SIZE) {
+                return;
+            }
+            keys[i] = graph;
+            size++;
+            lastGraph = graph;
+            lastSlot = i;
+        }
+        int bit = bit(action);
+        values[i] = (byte) ((values[i] & ~(bit << 4)) | bit | (permitted ? bit << 4 : 0));
+        if (size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    private static int bit(Action action) {
+        return 1 << action.ordinal();
+    }
+
+    private int slot(Node graph) {
+        if (graph == lastGraph && graph != null) {
+            return lastSlot;
+        }
+        int i = indexOf(graph);
+        if (keys[i] != null) {
+            lastGraph = graph;
+            lastSlot = i;
+        }
+        return i;
+    }
+
+    private int indexOf(Node graph) {
+        int mask = keys.length - 1;
+        int h = graph.hashCode() * 0x9E3779B9;
+        int i = (h ^ (h >>> 16)) & mask;
+        while (keys[i] != null && !keys[i].equals(graph)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void grow() {
+        Node[] oldKeys = keys;
+        byte[] oldValues = values;
+        keys = new Node[oldKeys.length * 2];
+        values = new byte[oldKeys.length * 2];
+        lastGraph = null;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null) {
+                int i = indexOf(oldKeys[j]);
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package solutions.linked.jena.security;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.jena.fuseki.server.Operation;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.web.HttpSC;
+import org.apache.shiro.web.servlet.OncePerRequestFilter;
+import org.apache.shiro.web.util.WebUtils;
+
+/**
+ * Answers Graph Store Protocol GET requests for the whole of a secured dataset
+ * in N-Quads or RDF Thrift with a {@link SecuredExporter}, which reads the
+ * graphs the user may read in parallel. Only requests to a Graph Store Protocol
+ * endpoint of the dataset, or to the dataset if it has one, are taken over.
+ * Requests for a single graph, queries and updates, other syntaxes and
+ * everything else go on to Fuseki.
+ *
+ * In the filter chains of the dataset and its data services in {@code shiro.ini}
+ * the filter has to come after the authenticating filters.
+ */
+public class ExportFilter extends OncePerRequestFilter {
+
+    // parameters of requests that aren't for the whole dataset
+    private static final String[] PARAMETERS = { "graph", "default", "query", "update", "request" };
+
+    @Override
+    protected void doFilterInternal(ServletRequest req, ServletResponse res, FilterChain chain) throws ServletException, IOException {
+        HttpServletRequest request = WebUtils.toHttp(req);
+        HttpServletResponse response = WebUtils.toHttp(res);
+        Lang lang = request.getMethod().equalsIgnoreCase("GET") && !hasAnyParameter(request) ?
+                acceptedLang(request.getHeader("Accept")) : null;
+        SecuredDatasetGraph dataset = lang == null ? null :
+                GraphStoreRequests.securedDataset(request, Operation.GSP_R, Operation.GSP_RW);
+        if (dataset == null) {
+            chain.doFilter(req, res);
+            return;
+        }
+        response.setStatus(HttpSC.OK_200);
+        response.setContentType(lang.getContentType().getContentType());
+        if (lang.getContentType().getCharset() != null) {
+            response.setCharacterEncoding(lang.getContentType().getCharset());
+        }
+        OutputStream out = response.getOutputStream();
+        new SecuredExporter(dataset).export(out, lang);
+        out.flush();
+    }
+
+    // the first media type of the Accept header, if it is one of the streamed syntaxes
+    private static Lang acceptedLang(String accept) {
+        if (accept == null) {
+            return null;
+        }
+        String first = accept.split(",")[0];
+        int parameters = first.indexOf(';');
+        Lang lang = RDFLanguages.contentTypeToLang((parameters < 0 ? first : first.substring(0, parameters)).trim());
+        return Lang.NQUADS.equals(lang) || Lang.RDFTHRIFT.equals(lang) ? lang : null;
+    }
+
+    private static boolean hasAnyParameter(HttpServletRequest request) {
+        for (String name : PARAMETERS) {
+            if (request.getParameter(name) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
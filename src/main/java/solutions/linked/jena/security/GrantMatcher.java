@@ -0,0 +1,187 @@
+package solutions.linked.jena.security;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link AclIndex.Grant}s of one principal compiled into a trie over path
+ * segments, shared by all patterns with a common prefix.
+ *
+ * The trie is run as an automaton over the segments of an IRI, so a single pass
+ * yields the modes of all matching patterns. {@code **} nodes loop on any segment.
+ * The result is the same as matching every {@link AntPattern} on its own: patterns
+ * containing {@code **} ignore a trailing separator, all others need the same
+ * number of segments and the same trailing separator as the IRI, except that a
+ * last {@code *} also matches an IRI ending with a separator after the preceding
+ * segments, just like in Shiro's {@code AntPathMatcher}.
+ */
+final class GrantMatcher {
+
+    // not AclIndex.NO_GRANTS, AclIndex.EMPTY is built from this one
+    static final GrantMatcher EMPTY = new GrantMatcher(new AclIndex.Grant[0]);
+
+    // patterns starting with a separator and those that don't never match the same IRI
+    private final TrieNode absoluteRoot = new TrieNode(false);
+
+    private final TrieNode relativeRoot = new TrieNode(false);
+
+    private final AclIndex.Grant[] grants;
+
+    GrantMatcher(AclIndex.Grant[] grants) {
+        this.grants = grants;
+        for (AclIndex.Grant grant : grants) {
+            add(grant.getPattern(), grant.getModes());
+        }
+    }
+
+    AclIndex.Grant[] getGrants() {
+        return grants;
+    }
+
+    boolean isEmpty() {
+        return grants.length == 0;
+    }
+
+    private void add(AntPattern pattern, int modes) {
+        TrieNode node = pattern.hasLeadingSeparator() ? absoluteRoot : relativeRoot;
+        for (String dir : pattern.getDirs()) {
+            node = node.child(dir);
+        }
+        if (node.afterDoubleStar) {
+            node.modes |= modes;
+        } else if (pattern.hasTrailingSeparator()) {
+            node.trailingModes |= modes;
+        } else {
+            node.modes |= modes;
+        }
+    }
+
+    /**
+     * @return the union of the modes of all grants whose pattern matches the path
+     */
+    int modes(AntPattern.Path path) {
+        List<TrieNode> active = new ArrayList<>(4);
+        List<TrieNode> next = new ArrayList<>(4);
+        enter(path.hasLeadingSeparator() ? absoluteRoot : relativeRoot, active);
+        for (String dir : path.getDirs()) {
+            for (TrieNode node : active) {
+                node.step(dir, next);
+            }
+            if (next.isEmpty()) {
+                return 0;
+            }
+            List<TrieNode> swap = active;
+            active = next;
+            next = swap;
+            next.clear();
+        }
+        int modes = 0;
+        boolean trailingSeparator = path.hasTrailingSeparator();
+        for (TrieNode node : active) {
+            modes |= node.accepted(trailingSeparator);
+        }
+        return modes;
+    }
+
+    private static void enter(TrieNode node, List<TrieNode> active) {
+        for (TrieNode present : active) {
+            if (present == node) {
+                return;
+            }
+        }
+        active.add(node);
+        if (node.doubleStar != null) {
+            // ** may match no segment at all
+            enter(node.doubleStar, active);
+        }
+    }
+
+    private static final class TrieNode {
+
+        // reached through a ** segment, so the trailing separator doesn't matter
+        private final boolean afterDoubleStar;
+
+        private Map<String, TrieNode> literals;
+
+        private List<String> wildcardDirs;
+
+        private List<TrieNode> wildcards;
+
+        private TrieNode doubleStar;
+
+        private TrieNode singleStar;
+
+        private boolean loops;
+
+        private int modes;
+
+        private int trailingModes;
+
+        private TrieNode(boolean afterDoubleStar) {
+            this.afterDoubleStar = afterDoubleStar;
+        }
+
+        private TrieNode child(String dir) {
+            if (AntPattern.DOUBLE_STAR.equals(dir)) {
+                if (doubleStar == null) {
+                    doubleStar = new TrieNode(true);
+                    doubleStar.loops = true;
+                }
+                return doubleStar;
+            }
+            if (dir.indexOf('*') < 0 && dir.indexOf('?') < 0) {
+                if (literals == null) {
+                    literals = new HashMap<>();
+                }
+                return literals.computeIfAbsent(dir, k -> new TrieNode(afterDoubleStar));
+            }
+            if (wildcards == null) {
+                wildcardDirs = new ArrayList<>();
+                wildcards = new ArrayList<>();
+            }
+            int i = wildcardDirs.indexOf(dir);
+            if (i >= 0) {
+                return wildcards.get(i);
+            }
+            TrieNode child = new TrieNode(afterDoubleStar);
+            wildcardDirs.add(dir);
+            wildcards.add(child);
+            if ("*".equals(dir)) {
+                singleStar = child;
+            }
+            return child;
+        }
+
+        private void step(String dir, List<TrieNode> next) {
+            if (loops) {
+                enter(this, next);
+            }
+            if (literals != null) {
+                TrieNode child = literals.get(dir);
+                if (child != null) {
+                    enter(child, next);
+                }
+            }
+            if (wildcards != null) {
+                for (int i = 0; i < wildcards.size(); i++) {
+                    if (AntPattern.matchSegment(wildcardDirs.get(i), dir)) {
+                        enter(wildcards.get(i), next);
+                    }
+                }
+            }
+        }
+
+        private int accepted(boolean trailingSeparator) {
+            if (afterDoubleStar) {
+                return modes;
+            }
+            int accepted = trailingSeparator ? trailingModes : modes;
+            if (trailingSeparator && singleStar != null) {
+                accepted |= singleStar.modes | singleStar.trailingModes;
+            }
+            return accepted;
+        }
+    }
+}
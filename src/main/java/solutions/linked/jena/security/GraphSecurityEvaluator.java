@@ -1,70 +1,76 @@
 package solutions.linked.jena.security;
 
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.function.Supplier;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
-import com.jcabi.aspects.Cacheable;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.jena.atlas.iterator.Iter;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.Node_URI;
 import org.apache.jena.graph.Triple;
 import org.apache.jena.permissions.SecurityEvaluator;
-import org.apache.jena.query.ParameterizedSparqlString;
-import org.apache.jena.query.Query;
-import org.apache.jena.query.QueryExecution;
-import org.apache.jena.query.QueryExecutionFactory;
-import org.apache.jena.query.QueryFactory;
-import org.apache.jena.query.QuerySolution;
-import org.apache.jena.query.ResultSet;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.shared.AuthenticationRequiredException;
-import org.apache.jena.sparql.core.NamedGraph;
+import org.apache.jena.sparql.core.DatasetChanges;
+import org.apache.jena.sparql.core.QuadAction;
+import org.apache.jena.system.Txn;
 import org.apache.shiro.SecurityUtils;
 import org.apache.shiro.subject.Subject;
-import org.apache.shiro.util.AntPathMatcher;
+import solutions.linked.jena.Settings;
 
 @Slf4j
-public class GraphSecurityEvaluator implements SecurityEvaluator {
+public class GraphSecurityEvaluator implements BulkSecurityEvaluator {
 
-    private ExecutorService executorService = Executors.newSingleThreadExecutor();
+    static final String DECISION_CACHE_MAX_SIZE = "DECISION_CACHE_MAX_SIZE";
 
-    private final String ownGraphPrefix;
+    static final String DECISION_CACHE_TTL_SECONDS = "DECISION_CACHE_TTL_SECONDS";
+
+    private static final int DEFAULT_DECISION_CACHE_MAX_SIZE = 65536;
+
+    private static final long DEFAULT_DECISION_CACHE_TTL_SECONDS = 300;
+
+    // shared by all evaluators, so that a reload isn't queued behind unrelated
+    // tasks in the common pool while the security graph lock is held
+    private static final ExecutorService reloader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "acl-reload");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    private static final String ONE_ACTION_QUERY =
-            "prefix fo: <https://linked.solutions/fuseki-oidc/ontology#>  " +
-            "prefix foaf:  <http://xmlns.com/foaf/0.1/> "+
-            "prefix acl:  <http://www.w3.org/ns/auth/acl#> " +
-                    "" +
-                    "SELECT ?graph ?permission " +
-                    "WHERE { " +
-                    "     {"+
-                    "        ?authorization fo:agentUserName ?username ." +
-                    "     } UNION {"+
-                    "        ?authorization acl:agentClass foaf:Agent . " +
-                    "     }"+
-                    "     ?authorization a acl:Authorization ;" + 
-                    "           fo:accessTo ?graph ;" +
-                    "           acl:mode  ?permission ." +
-                    "} ";
-    
-    private static final AntPathMatcher MATCHER = new AntPathMatcher();
+    private final String ownGraphPrefix;
 
     private Model securityModel;
 
+    private final DecisionCache decisionCache;
+
+    private final AclIndexMaintainer aclIndexMaintainer = new AclIndexMaintainer(this::authorizationsChanged);
+
+    private final DatasetChanges securityGraphListener = new ReloadingListener();
 
 
     public GraphSecurityEvaluator(Model securityModel, String ownGraphPrefix) {
+        this(securityModel, ownGraphPrefix, new DecisionCache(
+                Settings.getInt(DECISION_CACHE_MAX_SIZE, DEFAULT_DECISION_CACHE_MAX_SIZE, 0),
+                Settings.getLong(DECISION_CACHE_TTL_SECONDS, DEFAULT_DECISION_CACHE_TTL_SECONDS, 0), TimeUnit.SECONDS));
+    }
+
+    GraphSecurityEvaluator(Model securityModel, String ownGraphPrefix, DecisionCache decisionCache) {
         this.securityModel = securityModel;
         this.ownGraphPrefix = ownGraphPrefix;
+        this.decisionCache = decisionCache;
+        loadAclIndex();
     }
 
 
-
     @Override
-    @Cacheable
     public boolean evaluate(Object o, Action action, Node graphIRI) throws AuthenticationRequiredException {
         return hasAccess((Subject) o, (Node_URI) graphIRI, action);
     }
@@ -83,10 +89,13 @@ public class GraphSecurityEvaluator implements SecurityEvaluator {
 
 
     @Override
-    @Cacheable
     public boolean evaluate(Object o, Set<Action> set, Node graphIRI) throws AuthenticationRequiredException {
-        return set.stream()
-                .allMatch(action -> hasAccess((Subject) o, (Node_URI) graphIRI, action));
+        for (Action action : set) {
+            if (!hasAccess((Subject) o, (Node_URI) graphIRI, action)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -102,10 +111,13 @@ public class GraphSecurityEvaluator implements SecurityEvaluator {
     }
 
     @Override
-    @Cacheable
     public boolean evaluateAny(Object o, Set<Action> set, Node graphIRI) throws AuthenticationRequiredException {
-        return set.stream()
-                .anyMatch(action -> hasAccess((Subject) o, (Node_URI) graphIRI, action));
+        for (Action action : set) {
+            if (hasAccess((Subject) o, (Node_URI) graphIRI, action)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -132,6 +144,45 @@ public class GraphSecurityEvaluator implements SecurityEvaluator {
         return true;
     }
 
+    /**
+     * Decides on all graphs with the same authorizations snapshot. The decisions
+     * are not cached, a batch would otherwise evict all other entries.
+     */
+    @Override
+    public BitSet evaluate(Object principal, Set<Action> actions, List<Node> graphIRIs) {
+        Predicate<Node> permitted = permitted((Subject) principal, actions);
+        BitSet result = new BitSet(graphIRIs.size());
+        for (int i = 0; i < graphIRIs.size(); i++) {
+            if (permitted.test(graphIRIs.get(i))) {
+                result.set(i);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Iterator<Node> filter(Object principal, Set<Action> actions, Iterator<Node> graphIRIs) {
+        return Iter.filter(graphIRIs, permitted((Subject) principal, actions));
+    }
+
+    private Predicate<Node> permitted(Subject subject, Set<Action> actions) {
+        String username = subject.getPrincipal().toString();
+        AclIndex index = aclIndexMaintainer.current();
+        int required = 0;
+        for (Action action : actions) {
+            required |= AclIndex.bit(action);
+        }
+        int requiredModes = required;
+        return graphIRI -> {
+            if (!graphIRI.isURI()) {
+                return false;
+            }
+            String graphURI = graphIRI.getURI();
+            return isOwnGraph(username, graphURI) ||
+                    (index.modes(username, AntPattern.path(graphURI)) & requiredModes) == requiredModes;
+        };
+    }
+
     /**
      * Return the Shiro subject.  This is the subject that Shiro currently has logged in.
      */
@@ -157,85 +208,132 @@ public class GraphSecurityEvaluator implements SecurityEvaluator {
 
     private boolean hasAccess(Subject subject, Node_URI graphIRI, Action action) {
         String username = subject.getPrincipal().toString();
-        if (isOwnGraph(username, graphIRI)) {
-            log.debug("Principal: " + username + "\tAction: " + action + "\tNode:" + graphIRI + "\tAuthorized for own graph");
+        String graphURI = graphIRI.getURI();
+        if (isOwnGraph(username, graphURI)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Principal: " + username + "\tAction: " + action + "\tNode:" + graphIRI + "\tAuthorized for own graph");
+            }
             return true;
-        } else {
-            boolean result = isSecurityGraph(graphIRI) ?
-                    inOtherThread(() -> checkOtherGraphs(graphIRI, action, username)) :
-                    checkOtherGraphs(graphIRI, action, username);
+        }
+        // ids are taken before the index is read, so that a decision based on
+        // authorizations replaced meanwhile is stored under ids no longer in use
+        DecisionCache.Generation cache = decisionCache.generation();
+        int principalId = cache.principalId(username);
+        int graphId = cache.graphId(graphURI);
+        int actionBit = AclIndex.bit(action);
+        int decision = cache.get(principalId, graphId, actionBit);
+        if (decision != DecisionCache.UNKNOWN) {
+            return decision == DecisionCache.GRANTED;
+        }
+        boolean result = checkOtherGraphs(graphURI, action, username);
+        cache.put(principalId, graphId, actionBit, result);
+        if (log.isDebugEnabled()) {
             log.debug("Principal: " + username + "\tAction: " + action + "\tNode:" + graphIRI + "\tAuthorized: " + result);
-            return result;
+        }
+        return result;
+    }
+
+    /**
+     * The listener to be told about committed changes to the security graph, these
+     * are applied to the compiled authorizations without reading the graph again.
+     */
+    DatasetChanges securityGraphListener() {
+        return securityGraphListener;
+    }
+
+    private void authorizationsChanged(AclIndexMaintainer.Changes changes) {
+        if (changes.isPublicTier()) {
+            log.debug("Public authorizations changed, flushing all cached decisions");
+            decisionCache.invalidateAll();
+        } else {
+            log.debug("Authorizations of " + changes.getUsernames() + " changed, flushing their cached decisions");
+            changes.getUsernames().forEach(decisionCache::invalidate);
         }
     }
 
-    private boolean isSecurityGraph(Node_URI graphIRI) {
-        return ((NamedGraph)securityModel.getGraph()).getGraphName().equals(graphIRI);
+    // The authorizations are read from the security graph only once, in a
+    // transaction of their own as no other is active while the dataset is
+    // assembled. Afterwards each commit to the security graph publishes a new
+    // immutable index, which checks read without any locking or transaction.
+    private void loadAclIndex() {
+        if (securityModel.supportsTransactions()) {
+            Txn.executeRead(securityModel, () -> aclIndexMaintainer.load(securityModel));
+        } else {
+            aclIndexMaintainer.load(securityModel);
+        }
     }
 
-    // This terrible hack is needed to bypass Jena transactions system
-    // When write transaction is active for this graph
-    // in the current thread any query returns empty result set
-    // but it works from another thread.
-    // This is the problem only for writes into security graph
-    private boolean inOtherThread(Supplier<Boolean> checkOtherGraphs) {
+    // The committing thread is still in its transaction, so the committed
+    // security graph is read in a thread of its own
+    private void reloadAclIndex() {
         try {
-            return executorService.submit(() -> securityModel.calculateInTxn(checkOtherGraphs)).get();
-        } catch (InterruptedException e) {
-            //ignore
-        } catch (ExecutionException e) {
-            throw new RuntimeException(e.getCause());
+            CompletableFuture.runAsync(this::loadAclIndex, reloader).join();
+        } catch (CompletionException e) {
+            log.error("Reloading the authorizations failed: " + e.getCause().getMessage(), e.getCause());
         }
-        return false;
+        decisionCache.invalidateAll();
     }
 
-    private boolean isOwnGraph(String username, Node_URI graphIRI) {
-        String ownGraphURI = ownGraphPrefix + username;
-        return ownGraphURI.equals(graphIRI.getURI());
+    private boolean isOwnGraph(String username, String graphURI) {
+        return graphURI.length() == ownGraphPrefix.length() + username.length() &&
+                graphURI.startsWith(ownGraphPrefix) &&
+                graphURI.startsWith(username, ownGraphPrefix.length());
     }
 
-    @Cacheable
-    private boolean checkOtherGraphs(Node_URI graphIRI, Action action, String username) {
-        ParameterizedSparqlString queryString = new ParameterizedSparqlString(ONE_ACTION_QUERY);
-        queryString.setLiteral("username", username);
-        Query query = QueryFactory.create(queryString.toString());
+    private boolean checkOtherGraphs(String graphURI, Action action, String username) {
+        return aclIndexMaintainer.current().hasAccess(username, graphURI, action);
+    }
 
-        try(QueryExecution queryExecution = QueryExecutionFactory.create(query, securityModel)) {
-            ResultSet resultSet = queryExecution.execSelect();
-            while (resultSet.hasNext()) {
-                QuerySolution solution = resultSet.next();
-                String graph = solution.get("graph").asLiteral().getString();
-                String permission = solution.get("permission").asResource().getLocalName();
-                if (grantsAccess(graph, permission, graphIRI, action)) {
-                    return true;
+    /**
+     * Passes the changes to the security graph on to the {@link AclIndexMaintainer}.
+     * If applying them fails, the index would no longer match the security graph,
+     * so it is loaded from the graph again.
+     */
+    private final class ReloadingListener implements DatasetChanges {
+
+        private boolean failed;
+
+        @Override
+        public synchronized void start() {
+            failed = false;
+            aclIndexMaintainer.start();
+        }
+
+        @Override
+        public synchronized void change(QuadAction action, Node g, Node s, Node p, Node o) {
+            if (failed) {
+                return;
+            }
+            try {
+                aclIndexMaintainer.change(action, g, s, p, o);
+            } catch (RuntimeException e) {
+                failed(e);
+            }
+        }
+
+        @Override
+        public synchronized void finish() {
+            if (!failed) {
+                try {
+                    aclIndexMaintainer.finish();
+                } catch (RuntimeException e) {
+                    failed(e);
                 }
             }
-            return false;
+            if (failed) {
+                aclIndexMaintainer.reset();
+                reloadAclIndex();
+            }
         }
-    }
 
-    private boolean grantsAccess(String graphPattern, String permission, Node_URI graphIRI, Action action) {
-        return MATCHER.match(graphPattern, graphIRI.getURI()) &&
-                permissionMatches(permission, action);
-    }
+        @Override
+        public synchronized void reset() {
+            aclIndexMaintainer.reset();
+        }
 
-    private boolean permissionMatches(String permission, Action action) {
-        switch (permission.toUpperCase()) {
-            case "READ" :
-                return Action.Read.equals(action);
-            case "CREATE" :
-                return Action.Create.equals(action);
-            case "DELETE" :
-                return Action.Delete.equals(action);
-            case "UPDATE" :
-                return Action.Update.equals(action);
-            case "WRITE" :
-                return Action.Create.equals(action) ||
-                    Action.Delete.equals(action) ||
-                    Action.Update.equals(action);
-            default: return false;
+        private void failed(RuntimeException e) {
+            log.error("Applying security graph changes failed, reloading the authorizations: " + e.getMessage(), e);
+            failed = true;
         }
     }
-
-
 }
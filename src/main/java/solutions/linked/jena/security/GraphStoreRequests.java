@@ -0,0 +1,57 @@
+package solutions.linked.jena.security;
+
+import java.util.Arrays;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.jena.fuseki.server.DataAccessPoint;
+import org.apache.jena.fuseki.server.DataAccessPointRegistry;
+import org.apache.jena.fuseki.server.DataService;
+import org.apache.jena.fuseki.server.Endpoint;
+import org.apache.jena.fuseki.server.Operation;
+import org.apache.jena.sparql.core.DatasetGraph;
+
+/**
+ * Resolves the secured dataset of a Graph Store Protocol request, so that filters
+ * only take over requests Fuseki would answer with a Graph Store Protocol endpoint
+ * configured for the dataset.
+ */
+final class GraphStoreRequests {
+
+    private GraphStoreRequests() {
+    }
+
+    /**
+     * @param operations the Graph Store Protocol operations the endpoint has to provide
+     * @return the dataset of a request to /{dataset}/{service}, if the service is one
+     * of the operations, or to /{dataset}, if the dataset has an endpoint for one of
+     * them; {@code null} otherwise or if the dataset isn't secured
+     */
+    static SecuredDatasetGraph securedDataset(HttpServletRequest request, Operation... operations) {
+        List<Operation> accepted = Arrays.asList(operations);
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        DataAccessPointRegistry registry = DataAccessPointRegistry.get(request.getServletContext());
+        DataAccessPoint accessPoint = registry.get(path);
+        if (accessPoint != null) {
+            if (accepted.stream().allMatch(operation -> accessPoint.getDataService().getEndpoints(operation).isEmpty())) {
+                return null;
+            }
+            return secured(accessPoint.getDataService());
+        }
+        int serviceStart = path.lastIndexOf('/');
+        if (serviceStart <= 0) {
+            return null;
+        }
+        DataAccessPoint serviceAccessPoint = registry.get(path.substring(0, serviceStart));
+        if (serviceAccessPoint == null) {
+            return null;
+        }
+        Endpoint endpoint = serviceAccessPoint.getDataService().getEndpoint(path.substring(serviceStart + 1));
+        return endpoint != null && accepted.contains(endpoint.getOperation()) ? secured(serviceAccessPoint.getDataService()) : null;
+    }
+
+    private static SecuredDatasetGraph secured(DataService dataService) {
+        DatasetGraph dataset = dataService.getDataset();
+        return dataset instanceof SecuredDatasetGraph ? (SecuredDatasetGraph) dataset : null;
+    }
+}
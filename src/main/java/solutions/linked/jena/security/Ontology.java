@@ -35,6 +35,11 @@ public class Ontology {
     /** <p>The name of the graph that contains the access descriptions for the dataset</p> */
     public static final Property securityGraphName = M_MODEL.createProperty( "https://linked.solutions/fuseki-oidc/ontology#securityGraphName" );
     
+    /** <p>Whether quads of graphs that may not be read are dropped by TDB2 before their 
+     *  nodes are decoded</p>
+     */
+    public static final Property nodeIdFilter = M_MODEL.createProperty( "https://linked.solutions/fuseki-oidc/ontology#nodeIdFilter" );
+    
     /** <p>A Fuseki Dataset with access restricted</p> */
     public static final Resource SecuredDataset = M_MODEL.createResource( "https://linked.solutions/fuseki-oidc/ontology#SecuredDataset" );
     
@@ -0,0 +1,135 @@
+package solutions.linked.jena.security;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprFunction;
+import org.apache.jena.sparql.expr.ExprFunctionOp;
+import org.apache.jena.sparql.syntax.Element;
+import org.apache.jena.sparql.syntax.ElementAssign;
+import org.apache.jena.sparql.syntax.ElementBind;
+import org.apache.jena.sparql.syntax.ElementData;
+import org.apache.jena.sparql.syntax.ElementExists;
+import org.apache.jena.sparql.syntax.ElementFilter;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.ElementMinus;
+import org.apache.jena.sparql.syntax.ElementNamedGraph;
+import org.apache.jena.sparql.syntax.ElementNotExists;
+import org.apache.jena.sparql.syntax.ElementOptional;
+import org.apache.jena.sparql.syntax.ElementPathBlock;
+import org.apache.jena.sparql.syntax.ElementTriplesBlock;
+import org.apache.jena.sparql.syntax.ElementUnion;
+
+/**
+ * The graphs a graph pattern reads from, when they are constant. Patterns with a
+ * variable graph, the union graph, sub-queries or SERVICE, including within
+ * EXISTS and NOT EXISTS, have no constant graphs.
+ */
+final class PatternGraphs {
+
+    private final Set<Node> namedGraphs = new LinkedHashSet<>();
+    private boolean readsDefaultGraph;
+
+    private PatternGraphs() {
+    }
+
+    /**
+     * @return the graphs the pattern reads from, {@code null} if they aren't constant
+     */
+    static PatternGraphs of(Element pattern) {
+        PatternGraphs graphs = new PatternGraphs();
+        return graphs.add(pattern, null) ? graphs : null;
+    }
+
+    Set<Node> getNamedGraphs() {
+        return namedGraphs;
+    }
+
+    /**
+     * @return whether triple patterns outside of {@code GRAPH} read the default graph
+     */
+    boolean readsDefaultGraph() {
+        return readsDefaultGraph;
+    }
+
+    private boolean add(Element element, Node graph) {
+        if (element == null) {
+            return true;
+        }
+        if (element instanceof ElementGroup) {
+            for (Element child : ((ElementGroup) element).getElements()) {
+                if (!add(child, graph)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (element instanceof ElementPathBlock || element instanceof ElementTriplesBlock) {
+            if (graph == null) {
+                readsDefaultGraph = true;
+            }
+            return true;
+        }
+        if (element instanceof ElementNamedGraph) {
+            Node name = ((ElementNamedGraph) element).getGraphNameNode();
+            if (!name.isURI() || Quad.isUnionGraph(name)) {
+                return false;
+            }
+            if (Quad.isDefaultGraph(name)) {
+                readsDefaultGraph = true;
+            } else {
+                namedGraphs.add(name);
+            }
+            return add(((ElementNamedGraph) element).getElement(), name);
+        }
+        if (element instanceof ElementOptional) {
+            return add(((ElementOptional) element).getOptionalElement(), graph);
+        }
+        if (element instanceof ElementMinus) {
+            return add(((ElementMinus) element).getMinusElement(), graph);
+        }
+        if (element instanceof ElementUnion) {
+            for (Element child : ((ElementUnion) element).getElements()) {
+                if (!add(child, graph)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (element instanceof ElementExists) {
+            return add(((ElementExists) element).getElement(), graph);
+        }
+        if (element instanceof ElementNotExists) {
+            return add(((ElementNotExists) element).getElement(), graph);
+        }
+        if (element instanceof ElementFilter) {
+            return add(((ElementFilter) element).getExpr(), graph);
+        }
+        if (element instanceof ElementBind) {
+            return add(((ElementBind) element).getExpr(), graph);
+        }
+        if (element instanceof ElementAssign) {
+            return add(((ElementAssign) element).getExpr(), graph);
+        }
+        return element instanceof ElementData;
+    }
+
+    // EXISTS and NOT EXISTS in expressions read graphs too
+    private boolean add(Expr expr, Node graph) {
+        if (expr instanceof ExprFunctionOp) {
+            return add(((ExprFunctionOp) expr).getElement(), graph);
+        }
+        if (expr.isFunction()) {
+            ExprFunction function = expr.getFunction();
+            for (Expr arg : function.getArgs()) {
+                if (!add(arg, graph)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,122 @@
+package solutions.linked.jena.security;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.permissions.SecurityEvaluator.Action;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWrapper;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.tdb2.loader.DataLoader;
+import org.apache.jena.tdb2.loader.LoaderFactory;
+import org.apache.jena.tdb2.loader.base.MonitorOutput;
+
+/**
+ * Loads RDF into a {@link SecuredDatasetGraph} backed by TDB2 with the TDB2
+ * parallel loader, in a transaction of its own.
+ *
+ * The target graph is authorized before loading, graphs of quads once when they
+ * first occur. If one of them may not be created in, the load is aborted as a
+ * whole. The security graph can't be bulk loaded as its changes have to reach
+ * the security graph listeners.
+ */
+@Slf4j
+public class SecuredBulkLoader {
+
+    private final SecuredDatasetGraph dataset;
+
+    public SecuredBulkLoader(SecuredDatasetGraph dataset) {
+        this.dataset = dataset;
+    }
+
+    /**
+     * @param graphName the graph to load triples into, {@code null} to load triples
+     *                  into the default graph and quads into their graphs
+     * @throws AccessDeniedException if a graph may not be created in
+     */
+    public LoadResult load(InputStream in, Lang lang, Node graphName) {
+        if (dataset.isInTransaction()) {
+            throw new IllegalStateException("Bulk loads run in a transaction of their own");
+        }
+        long start = System.nanoTime();
+        Set<Node> graphs = new LinkedHashSet<>();
+        Node tripleGraph = graphName == null ? Quad.defaultGraphIRI : graphName;
+        if (graphName != null) {
+            authorize(graphName, graphs);
+        }
+        MonitorOutput output = (fmt, args) -> log.info(String.format(fmt, args));
+        DataLoader loader = graphName == null ?
+                LoaderFactory.parallelLoader(dataset.getBase(), output) :
+                LoaderFactory.parallelLoader(dataset.getBase(), graphName, output);
+        StreamRDF stream = new StreamRDFWrapper(loader.stream()) {
+            private Node lastGraph;
+
+            @Override
+            public void triple(Triple triple) {
+                target(tripleGraph);
+                super.triple(triple);
+            }
+
+            @Override
+            public void quad(Quad quad) {
+                target(quad.isDefaultGraph() ? Quad.defaultGraphIRI : quad.getGraph());
+                super.quad(quad);
+            }
+
+            private void target(Node graph) {
+                if (graph != lastGraph) {
+                    authorize(graph, graphs);
+                    lastGraph = graph;
+                }
+            }
+        };
+        loader.startBulk();
+        dataset.directWriteStarted();
+        try {
+            try {
+                RDFParser.source(in).lang(lang).parse(stream);
+                loader.finishBulk();
+            } catch (RuntimeException e) {
+                loader.finishException(e);
+                throw e;
+            }
+        } finally {
+            dataset.directWriteFinished();
+        }
+        LoadResult result = new LoadResult(loader.countTriples(), loader.countQuads(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        log.info("Loaded {} triples and {} quads into {} graph(s) in {} ms",
+                result.getTripleCount(), result.getQuadCount(), graphs.size(), result.getMillis());
+        return result;
+    }
+
+    private void authorize(Node graph, Set<Node> authorized) {
+        if (authorized.contains(graph)) {
+            return;
+        }
+        if (dataset.isSecurityGraph(graph)) {
+            throw new AccessDeniedException("The security graph can't be bulk loaded");
+        }
+        dataset.authorize(Action.Create, Collections.singleton(graph));
+        authorized.add(graph);
+    }
+
+    @Value
+    public static class LoadResult {
+
+        private long tripleCount;
+
+        private long quadCount;
+
+        private long millis;
+    }
+}
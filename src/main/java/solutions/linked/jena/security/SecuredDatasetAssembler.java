@@ -66,6 +66,8 @@ public class SecuredDatasetAssembler extends DatasetAssembler {
             return;
         MappingRegistry.addPrefixMapping("sec", AssemblerConstants.URI);
         registerWith(Assembler.general);
+        SecuredQueryEngineFactory.register();
+        SecuredUpdateEngineFactory.register();
         initialized = true;
     }
 
@@ -120,7 +122,19 @@ public class SecuredDatasetAssembler extends DatasetAssembler {
         }
         SecurityEvaluator securityEvaluator = getEvaluatorImpl(a, evaluatorImpl);
 
-        dsg = new SecuredDatasetGraph(dsg, securityEvaluator);
+        SecuredDatasetGraph securedDsg = new SecuredDatasetGraph(dsg, securityEvaluator, NodeFactory.createURI(securityGraphName));
+        if (securityEvaluator instanceof GraphSecurityEvaluator) {
+            securedDsg.addSecurityGraphListener(((GraphSecurityEvaluator) securityEvaluator).securityGraphListener());
+        }
+        if (root.hasProperty(Ontology.nodeIdFilter)) {
+            Node b = root.getProperty(Ontology.nodeIdFilter).getObject().asNode();
+            NodeValue nv = NodeValue.makeNode(b);
+            if (nv.isBoolean())
+                securedDsg.setNodeIdFilter(nv.getBoolean());
+            else
+                log.warn("Failed to recognize value for node id filter setting (ignored): " + b);
+        }
+        dsg = securedDsg;
 
         if (root.hasProperty(pUnionDefaultGraph)) {
             Node b = root.getProperty(pUnionDefaultGraph).getObject().asNode();
@@ -1,12 +1,22 @@
 package solutions.linked.jena.security;
 
-import static java.util.stream.Collectors.toList;
-
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import lombok.extern.slf4j.Slf4j;
 import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.lib.Closeable;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.NodeFactory;
@@ -14,37 +24,236 @@ import org.apache.jena.permissions.SecurityEvaluator;
 import org.apache.jena.query.ReadWrite;
 import org.apache.jena.query.TxnType;
 import org.apache.jena.shared.Lock;
+import org.apache.jena.sparql.core.DatasetChanges;
 import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.GraphView;
 import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.QuadAction;
 import org.apache.jena.sparql.graph.GraphZero;
 import org.apache.jena.sparql.util.Context;
+import org.apache.jena.tdb.TDB;
+import org.apache.jena.tdb2.TDB2;
 
+@Slf4j
 public class SecuredDatasetGraph implements DatasetGraph {
 
     public static final String DEFAULT_GRAPH_SECURITY_NAME = "DEFAULT";
+    private static final Node DEFAULT_GRAPH_SECURITY_NODE = NodeFactory.createURI(DEFAULT_GRAPH_SECURITY_NAME);
+    private static final Set<SecurityEvaluator.Action> READ = Collections.singleton(SecurityEvaluator.Action.Read);
+    private static final Set<SecurityEvaluator.Action> DELETE = Collections.singleton(SecurityEvaluator.Action.Delete);
+    // A lookup per readable graph beats filtering a scan of all graphs when few of
+    // them are readable; with a bound term the scan is selective by itself though
+    private static final double PER_GRAPH_RATIO = 0.25;
+    private static final int PER_GRAPH_BOUND_LIMIT = 16;
+    // graphs authorized and quads deleted at a time by deletes spanning all graphs
+    private static final int DELETE_BATCH_SIZE = 1000;
+    private static final long DELETE_PROGRESS_INTERVAL = 100_000;
     private DatasetGraph base;
     private SecurityEvaluator securityEvaluator;
-
-    protected SecuredDatasetGraph(DatasetGraph base, SecurityEvaluator securityEvaluator) {
+    private Node securityGraphName;
+    private final List<DatasetChanges> securityGraphListeners = new CopyOnWriteArrayList<>();
+    // Transactions are per thread, so are the changes the current one
+    // made to the security graph
+    private final ThreadLocal<List<SecurityGraphChange>> securityGraphChanges = ThreadLocal.withInitial(ArrayList::new);
+    // held from committing changes to the security graph until they are published
+    private final Object securityGraphPublication = new Object();
+    // null outside of transactions
+    private final ThreadLocal<TransactionState> transactionState = new ThreadLocal<>();
+    // incremented before and after a write transaction commits, so odd while one does
+    private final AtomicLong commits = new AtomicLong();
+    private volatile GraphNames graphNames;
+    private volatile GraphSizes graphSizes;
+    private boolean nodeIdFilter;
+
+    protected SecuredDatasetGraph(DatasetGraph base, SecurityEvaluator securityEvaluator, Node securityGraphName) {
         this.base = base;
         this.securityEvaluator = securityEvaluator;
+        this.securityGraphName = securityGraphName;
+    }
+
+    /**
+     * Registers a listener that is told about the changes to the security graph
+     * once the transaction that made them has been committed, in commit order.
+     */
+    public void addSecurityGraphListener(DatasetChanges listener) {
+        securityGraphListeners.add(listener);
+    }
+
+    /**
+     * Enables running queries with TDB2's engine on the base dataset, with quads
+     * of graphs that may not be read filtered by NodeId, see {@link SecuredQueryEngineFactory}.
+     */
+    void setNodeIdFilter(boolean nodeIdFilter) {
+        this.nodeIdFilter = nodeIdFilter;
+    }
+
+    boolean isNodeIdFilter() {
+        return nodeIdFilter;
+    }
+
+    DatasetGraph getBase() {
+        return base;
+    }
+
+    boolean isDefaultGraphReadable() {
+        return hasReadAccess(DEFAULT_GRAPH_SECURITY_NODE);
+    }
+
+    private void recordSecurityGraphChange(QuadAction action, Node s, Node p, Node o) {
+        if (!securityGraphListeners.isEmpty()) {
+            securityGraphChanges.get().add(new SecurityGraphChange(action, s, p, o));
+        }
+    }
+
+    // for bulk deletes, the affected triples have to be known before they are gone
+    private void recordSecurityGraphDeletes(Node s, Node p, Node o) {
+        if (!securityGraphListeners.isEmpty()) {
+            Iterator<Quad> quads = base.find(securityGraphName, s, p, o);
+            try {
+                quads.forEachRemaining(q -> recordSecurityGraphChange(QuadAction.DELETE, q.getSubject(), q.getPredicate(), q.getObject()));
+            } finally {
+                Iter.close(quads);
+            }
+        }
+    }
+
+    private void publishSecurityGraphChanges() {
+        List<SecurityGraphChange> changes = securityGraphChanges.get();
+        if (changes.isEmpty()) {
+            return;
+        }
+        for (DatasetChanges listener : securityGraphListeners) {
+            try {
+                listener.start();
+                for (SecurityGraphChange change : changes) {
+                    listener.change(change.action, securityGraphName, change.subject, change.predicate, change.object);
+                }
+                listener.finish();
+            } catch (RuntimeException e) {
+                log.error("Security graph listener failed: " + e.getMessage(), e);
+                listener.reset();
+            }
+        }
+        changes.clear();
     }
 
     private boolean hasReadAccess(Node test) {
-        return securityEvaluator.evaluate(securityEvaluator.getPrincipal(), SecurityEvaluator.Action.Read, test);
+        return hasAccess(SecurityEvaluator.Action.Read, test);
     }
 
     private boolean hasCreateAccess(Node test) {
-        return securityEvaluator.evaluate(securityEvaluator.getPrincipal(), SecurityEvaluator.Action.Create, test);
+        return hasAccess(SecurityEvaluator.Action.Create, test);
     }
 
     private boolean hasDeleteAccess(Node test) {
-        return securityEvaluator.evaluate(securityEvaluator.getPrincipal(), SecurityEvaluator.Action.Delete, test);
+        return hasAccess(SecurityEvaluator.Action.Delete, test);
+    }
+
+    private boolean hasAccess(SecurityEvaluator.Action action, Node test) {
+        TransactionState state = transactionState.get();
+        if (state == null) {
+            return securityEvaluator.evaluate(securityEvaluator.getPrincipal(), action, test);
+        }
+        DecisionMemo memo = state.decisions;
+        int decision = memo.get(test, action);
+        if (decision != DecisionMemo.UNKNOWN) {
+            return decision == DecisionMemo.GRANTED;
+        }
+        boolean result = securityEvaluator.evaluate(memo.getPrincipal(), action, test);
+        memo.put(test, action, result);
+        return result;
+    }
+
+    /**
+     * Authorizes the action on all graphs in one batch, remembering the decisions
+     * for the current transaction. The default graph may be given as any of its names.
+     *
+     * @throws AccessDeniedException if the action isn't permitted on one of the graphs
+     */
+    void authorize(SecurityEvaluator.Action action, Collection<Node> graphs) {
+        List<Node> targets = securityNodes(graphs);
+        int denied = decide(action, targets).nextClearBit(0);
+        if (denied < targets.size()) {
+            throw new AccessDeniedException("User is not allowed to " + action.name().toLowerCase() + " graph " + targets.get(denied));
+        }
+    }
+
+    /**
+     * Like {@link #authorize(SecurityEvaluator.Action, Collection)} without failing.
+     *
+     * @return whether the action is permitted on all graphs
+     */
+    boolean isPermitted(SecurityEvaluator.Action action, Collection<Node> graphs) {
+        List<Node> targets = securityNodes(graphs);
+        return decide(action, targets).cardinality() == targets.size();
+    }
+
+    private static List<Node> securityNodes(Collection<Node> graphs) {
+        List<Node> targets = new ArrayList<>(graphs.size());
+        for (Node graph : graphs) {
+            targets.add(Quad.isDefaultGraph(graph) ? DEFAULT_GRAPH_SECURITY_NODE : graph);
+        }
+        return targets;
+    }
+
+    private BitSet decide(SecurityEvaluator.Action action, List<Node> graphs) {
+        BitSet permitted = permitted(Collections.singleton(action), graphs);
+        TransactionState state = transactionState.get();
+        if (state != null) {
+            for (int i = 0; i < graphs.size(); i++) {
+                state.decisions.put(graphs.get(i), action, permitted.get(i));
+            }
+        }
+        return permitted;
+    }
+
+    /**
+     * Tells that a write to the base dataset in a transaction of its own, holding
+     * the write lock of the base dataset, is about to be committed. Counts as a
+     * commit, like {@link #commit()} of a write transaction.
+     */
+    void directWriteStarted() {
+        commits.incrementAndGet();
+    }
+
+    /**
+     * Tells that a write started with {@link #directWriteStarted()} is over,
+     * committed or not.
+     */
+    void directWriteFinished() {
+        commits.incrementAndGet();
+    }
+
+    boolean isSecurityGraph(Node graph) {
+        return graph.equals(securityGraphName);
+    }
+
+    private Object getPrincipal() {
+        TransactionState state = transactionState.get();
+        return state == null ? securityEvaluator.getPrincipal() : state.decisions.getPrincipal();
+    }
+
+    private BitSet permitted(Set<SecurityEvaluator.Action> actions, List<Node> graphs) {
+        Object principal = getPrincipal();
+        if (securityEvaluator instanceof BulkSecurityEvaluator) {
+            return ((BulkSecurityEvaluator) securityEvaluator).evaluate(principal, actions, graphs);
+        }
+        BitSet permitted = new BitSet(graphs.size());
+        for (int i = 0; i < graphs.size(); i++) {
+            if (securityEvaluator.evaluate(principal, actions, graphs.get(i))) {
+                permitted.set(i);
+            }
+        }
+        return permitted;
     }
 
     @Override
     public Graph getDefaultGraph() {
-        boolean isReadAllowed = hasReadAccess(NodeFactory.createURI(DEFAULT_GRAPH_SECURITY_NAME));
+        if (isUnionDefaultGraph(getContext())) {
+            // the default graph is made of the named graphs, so their permissions apply
+            return getUnionGraph();
+        }
+        boolean isReadAllowed = hasReadAccess(DEFAULT_GRAPH_SECURITY_NODE);
         if (isReadAllowed) {
             return base.getDefaultGraph();
         } else {
@@ -54,8 +263,14 @@ public class SecuredDatasetGraph implements DatasetGraph {
 
     @Override
     public Graph getGraph(Node graphNode) {
+        if (Quad.isUnionGraph(graphNode)) {
+            return getUnionGraph();
+        }
         boolean isReadAllowed = hasReadAccess(graphNode);
-        if (isReadAllowed) {
+        if (isReadAllowed && isSecurityGraph(graphNode)) {
+            // writes to the security graph go through this dataset to reach its listeners
+            return GraphView.createNamedGraph(this, graphNode);
+        } else if (isReadAllowed) {
             return base.getGraph(graphNode);
         } else {
             return GraphZero.instance();
@@ -64,7 +279,7 @@ public class SecuredDatasetGraph implements DatasetGraph {
 
     @Override
     public Graph getUnionGraph() {
-        throw new UnsupportedOperationException("Union graph is not supported by secured dataset.");
+        return new SecuredUnionGraph(this);
     }
 
     @Override
@@ -80,6 +295,11 @@ public class SecuredDatasetGraph implements DatasetGraph {
     @Override
     public void addGraph(Node graphName, Graph graph) {
         if (hasCreateAccess(graphName)) {
+            if (isSecurityGraph(graphName)) {
+                recordSecurityGraphDeletes(Node.ANY, Node.ANY, Node.ANY);
+                graph.find(Node.ANY, Node.ANY, Node.ANY)
+                        .forEachRemaining(t -> recordSecurityGraphChange(QuadAction.ADD, t.getSubject(), t.getPredicate(), t.getObject()));
+            }
             base.addGraph(graphName, graph);
         } else {
             throw new AccessDeniedException("User is not allowed to create graph " + graphName);
@@ -89,6 +309,9 @@ public class SecuredDatasetGraph implements DatasetGraph {
     @Override
     public void removeGraph(Node graphName) {
         if (hasDeleteAccess(graphName)) {
+            if (isSecurityGraph(graphName)) {
+                recordSecurityGraphDeletes(Node.ANY, Node.ANY, Node.ANY);
+            }
             base.removeGraph(graphName);
         } else {
             throw new AccessDeniedException("User is not allowed to delete graph " + graphName);
@@ -97,27 +320,140 @@ public class SecuredDatasetGraph implements DatasetGraph {
 
     @Override
     public Iterator<Node> listGraphNodes() {
-        List<Node> result = getBaseGraphNodes();
-        return getReadAllowedGraphNodes(result)
-                .iterator();
-    }
-
-    private List<Node> getReadAllowedGraphNodes(List<Node> result) {
-        return result.stream()
-                .filter(this::hasReadAccess)
-                .collect(toList());
+        TransactionState state = transactionState.get();
+        if (state != null && state.readableGraphs != null && !isWriting()) {
+            return state.readableGraphs.getGraphs().iterator();
+        }
+        // filtered as they are pulled, so listing millions of graphs needs no copy of them
+        Iterator<Node> graphs = base.listGraphNodes();
+        Iterator<Node> readable = securityEvaluator instanceof BulkSecurityEvaluator ?
+                ((BulkSecurityEvaluator) securityEvaluator).filter(getPrincipal(), READ, graphs) :
+                Iter.filter(graphs, this::hasReadAccess);
+        return new ClosingIterator<>(readable, graphs);
     }
 
     private List<Node> getBaseGraphNodes() {
+        TransactionState state = transactionState.get();
+        boolean cacheable = state != null && state.snapshot >= 0 && !isWriting();
+        if (cacheable) {
+            GraphNames cached = graphNames;
+            if (cached != null && cached.snapshot == state.snapshot) {
+                return cached.nodes;
+            }
+        }
         List<Node> result = new ArrayList<>();
         base.listGraphNodes().forEachRemaining(result::add);
+        result = Collections.unmodifiableList(result);
+        if (cacheable) {
+            graphNames = new GraphNames(state.snapshot, result);
+        }
         return result;
     }
 
+    /**
+     * @return the number of commits the current read transaction sees, -1 if
+     * unknown or not in a read transaction
+     */
+    long readSnapshot() {
+        TransactionState state = transactionState.get();
+        return state == null || isWriting() ? -1 : state.snapshot;
+    }
+
+    /**
+     * Begins a read transaction on the base dataset for the current thread if it
+     * sees the same data as a transaction with the given snapshot, see {@link #readSnapshot()}.
+     *
+     * @return whether the transaction was begun, if so it has to be ended on the base dataset
+     */
+    boolean beginBaseRead(long snapshot) {
+        if (snapshot < 0) {
+            return false;
+        }
+        base.begin(TxnType.READ);
+        if (commits.get() == snapshot) {
+            return true;
+        }
+        base.end();
+        return false;
+    }
+
+    private boolean isWriting() {
+        return base.transactionMode() == ReadWrite.WRITE;
+    }
+
+    /**
+     * @return the named graphs readable in the current transaction, {@code null} if
+     * there is none or it writes and the graphs may change from one call to the next
+     */
+    ReadableGraphs readableGraphs() {
+        TransactionState state = transactionState.get();
+        if (state == null || isWriting()) {
+            return null;
+        }
+        if (state.readableGraphs == null) {
+            List<Node> graphs = getBaseGraphNodes();
+            state.readableGraphs = new ReadableGraphs(graphs, permitted(READ, graphs));
+        }
+        return state.readableGraphs;
+    }
+
+    /**
+     * @return the named graphs readable now, shared within read transactions
+     */
+    ReadableGraphs listReadableGraphs() {
+        ReadableGraphs graphs = readableGraphs();
+        if (graphs == null) {
+            List<Node> all = getBaseGraphNodes();
+            graphs = new ReadableGraphs(all, permitted(READ, all));
+        }
+        return graphs;
+    }
+
+    private Iterator<Quad> findInReadableGraphs(Node s, Node p, Node o, boolean includeDefaultGraph) {
+        ReadableGraphs graphs = readableGraphs();
+        if (graphs == null) {
+            return Iter.filter(scan(s, p, o, includeDefaultGraph), q -> hasReadAccess(
+                    Quad.isDefaultGraph(q.getGraph()) ? DEFAULT_GRAPH_SECURITY_NODE : q.getGraph()));
+        }
+        boolean defaultGraphReadable = includeDefaultGraph && hasReadAccess(DEFAULT_GRAPH_SECURITY_NODE);
+        if (graphs.isAll() && (defaultGraphReadable || !includeDefaultGraph)) {
+            return scan(s, p, o, includeDefaultGraph);
+        }
+        boolean bound = isBound(s) || isBound(p) || isBound(o);
+        if (graphs.isFew() && (!bound || graphs.getGraphs().size() <= PER_GRAPH_BOUND_LIMIT)) {
+            Iterator<Quad> named = Iter.flatMap(graphs.getGraphs().iterator(), g -> base.findNG(g, s, p, o));
+            return defaultGraphReadable ? Iter.concat(base.find(Quad.defaultGraphIRI, s, p, o), named) : named;
+        }
+        return Iter.filter(scan(s, p, o, includeDefaultGraph), q -> graphs.contains(q.getGraph()) ||
+                (defaultGraphReadable && Quad.isDefaultGraph(q.getGraph())));
+    }
+
+    private Iterator<Quad> findInUnionGraph(Node graphName, Node s, Node p, Node o) {
+        return Iter.map(getUnionGraph().find(s, p, o), t -> new Quad(graphName, t));
+    }
+
+    private Iterator<Quad> scan(Node s, Node p, Node o, boolean includeDefaultGraph) {
+        return includeDefaultGraph ? base.find(Node.ANY, s, p, o) : base.findNG(Node.ANY, s, p, o);
+    }
+
+    /**
+     * @return whether the default graph is the union of the named graphs in the context
+     */
+    static boolean isUnionDefaultGraph(Context context) {
+        return context != null && (context.isTrue(TDB2.symUnionDefaultGraph) || context.isTrue(TDB.symUnionDefaultGraph));
+    }
+
+    static boolean isBound(Node node) {
+        return node != null && node.isConcrete();
+    }
+
     @Override
     public void add(Quad quad) {
         Node graph = quad.getGraph();
         if (hasCreateAccess(graph)) {
+            if (isSecurityGraph(graph)) {
+                recordSecurityGraphChange(QuadAction.ADD, quad.getSubject(), quad.getPredicate(), quad.getObject());
+            }
             base.add(quad);
         } else {
             throw new AccessDeniedException("User is not allowed to add triples to graph " + graph);
@@ -128,6 +464,9 @@ public class SecuredDatasetGraph implements DatasetGraph {
     public void delete(Quad quad) {
         Node graph = quad.getGraph();
         if (hasDeleteAccess(graph)) {
+            if (isSecurityGraph(graph)) {
+                recordSecurityGraphChange(QuadAction.DELETE, quad.getSubject(), quad.getPredicate(), quad.getObject());
+            }
             base.delete(quad);
         } else {
             throw new AccessDeniedException("User is not allowed to delete triples from graph " + graph);
@@ -137,6 +476,9 @@ public class SecuredDatasetGraph implements DatasetGraph {
     @Override
     public void add(Node g, Node s, Node p, Node o) {
         if (hasCreateAccess(g)) {
+            if (isSecurityGraph(g)) {
+                recordSecurityGraphChange(QuadAction.ADD, s, p, o);
+            }
             base.add(g, s, p, o);
         } else {
             throw new AccessDeniedException("User is not allowed to add triples to graph " + g);
@@ -146,6 +488,9 @@ public class SecuredDatasetGraph implements DatasetGraph {
     @Override
     public void delete(Node g, Node s, Node p, Node o) {
         if (hasDeleteAccess(g)) {
+            if (isSecurityGraph(g)) {
+                recordSecurityGraphChange(QuadAction.DELETE, s, p, o);
+            }
             base.delete(g, s, p, o);
         } else {
             throw new AccessDeniedException("User is not allowed to delete triples from graph " + g);
@@ -155,17 +500,20 @@ public class SecuredDatasetGraph implements DatasetGraph {
     @Override
     public void deleteAny(Node g, Node s, Node p, Node o) {
         if (g == null || Quad.isDefaultGraph(g)) { //default graph case
-            if (hasDeleteAccess(NodeFactory.createURI(DEFAULT_GRAPH_SECURITY_NAME))) {
+            if (hasDeleteAccess(DEFAULT_GRAPH_SECURITY_NODE)) {
                 base.deleteAny(g, s, p, o);
                 return;
             }
         } else if (g.equals(Node.ANY)) {
-            if (getBaseGraphNodes().stream().allMatch(this::hasDeleteAccess)) {
-                base.deleteAny(g, s, p, o);
-                return;
-            }
+            authorizeDeleteInAllGraphs();
+            recordSecurityGraphDeletes(s, p, o);
+            deleteInChunks(Node.ANY, s, p, o);
+            return;
         } else {
             if (hasDeleteAccess(g)) {
+                if (isSecurityGraph(g)) {
+                    recordSecurityGraphDeletes(s, p, o);
+                }
                 base.deleteAny(g, s, p, o);
                 return;
             }
@@ -175,7 +523,7 @@ public class SecuredDatasetGraph implements DatasetGraph {
 
     @Override
     public Iterator<Quad> find() {
-        return Iter.filter(base.find(), quad -> hasReadAccess(quad.getGraph()));
+        return find(Node.ANY, Node.ANY, Node.ANY, Node.ANY);
     }
 
     @Override
@@ -186,11 +534,16 @@ public class SecuredDatasetGraph implements DatasetGraph {
     @Override
     public Iterator<Quad> find(Node g, Node s, Node p, Node o) {
         if (g == null || Quad.isDefaultGraph(g)) { //default graph case
-            if (hasReadAccess(NodeFactory.createURI(DEFAULT_GRAPH_SECURITY_NAME))) {
+            if (isUnionDefaultGraph(getContext())) {
+                return findInUnionGraph(Quad.defaultGraphIRI, s, p, o);
+            }
+            if (hasReadAccess(DEFAULT_GRAPH_SECURITY_NODE)) {
                 return base.find(g, s, p, o);
             }
         } else if (g.equals(Node.ANY)) {
-            return Iter.filter(base.find(g, s, p, o), q -> hasReadAccess(q.getGraph()));
+            return findInReadableGraphs(s, p, o, true);
+        } else if (Quad.isUnionGraph(g)) {
+            return findInUnionGraph(Quad.unionGraph, s, p, o);
         } else {
             if (hasReadAccess(g)) {
                 return base.find(g, s, p, o);
@@ -202,11 +555,16 @@ public class SecuredDatasetGraph implements DatasetGraph {
     @Override
     public Iterator<Quad> findNG(Node g, Node s, Node p, Node o) {
         if (g == null || Quad.isDefaultGraph(g)) { //default graph case
-            if (hasReadAccess(NodeFactory.createURI(DEFAULT_GRAPH_SECURITY_NAME))) {
+            if (isUnionDefaultGraph(getContext())) {
+                return findInUnionGraph(Quad.defaultGraphIRI, s, p, o);
+            }
+            if (hasReadAccess(DEFAULT_GRAPH_SECURITY_NODE)) {
                 return base.findNG(g, s, p, o);
             }
         } else if (g.equals(Node.ANY)) {
-            return Iter.filter(base.findNG(g, s, p, o), q -> hasReadAccess(q.getGraph()));
+            return findInReadableGraphs(s, p, o, false);
+        } else if (Quad.isUnionGraph(g)) {
+            return findInUnionGraph(Quad.unionGraph, s, p, o);
         } else {
             if (hasReadAccess(g)) {
                 return base.findNG(g, s, p, o);
@@ -230,10 +588,72 @@ public class SecuredDatasetGraph implements DatasetGraph {
 
     @Override
     public void clear() {
-        if (getBaseGraphNodes().stream().allMatch(this::hasDeleteAccess)) {
-            base.clear();
+        if (!hasDeleteAccess(DEFAULT_GRAPH_SECURITY_NODE)) {
+            throw new AccessDeniedException("User is not allowed to clear dataset.");
+        }
+        authorizeDeleteInAllGraphs();
+        recordSecurityGraphDeletes(Node.ANY, Node.ANY, Node.ANY);
+        deleteInChunks(Quad.defaultGraphIRI, Node.ANY, Node.ANY, Node.ANY);
+        deleteInChunks(Node.ANY, Node.ANY, Node.ANY, Node.ANY);
+        // drops what is left of the graphs for datasets that keep empty ones
+        base.clear();
+    }
+
+    // streams the graph names, so there is no list of all of them
+    private void authorizeDeleteInAllGraphs() {
+        Iterator<Node> graphs = base.listGraphNodes();
+        try {
+            List<Node> batch = new ArrayList<>(DELETE_BATCH_SIZE);
+            while (graphs.hasNext()) {
+                batch.add(graphs.next());
+                if (batch.size() == DELETE_BATCH_SIZE || !graphs.hasNext()) {
+                    int denied = permitted(DELETE, batch).nextClearBit(0);
+                    if (denied < batch.size()) {
+                        throw new AccessDeniedException("User is not allowed to delete triples from graph " + batch.get(denied));
+                    }
+                    batch.clear();
+                }
+            }
+        } finally {
+            Iter.close(graphs);
+        }
+    }
+
+    /**
+     * Deletes the matching quads a chunk at a time, the quads of the named graphs
+     * if {@code g} is {@link Node#ANY}. As the quads come ordered by graph, graphs
+     * are emptied one after the other.
+     */
+    private void deleteInChunks(Node g, Node s, Node p, Node o) {
+        long deleted = 0;
+        long graphs = 0;
+        Node lastGraph = null;
+        List<Quad> chunk = new ArrayList<>(DELETE_BATCH_SIZE);
+        do {
+            chunk.clear();
+            Iterator<Quad> quads = g.equals(Node.ANY) ? base.findNG(g, s, p, o) : base.find(g, s, p, o);
+            try {
+                while (chunk.size() < DELETE_BATCH_SIZE && quads.hasNext()) {
+                    chunk.add(quads.next());
+                }
+            } finally {
+                Iter.close(quads);
+            }
+            for (Quad quad : chunk) {
+                if (!quad.getGraph().equals(lastGraph)) {
+                    lastGraph = quad.getGraph();
+                    graphs++;
+                }
+                base.delete(quad);
+            }
+            if ((deleted + chunk.size()) / DELETE_PROGRESS_INTERVAL > deleted / DELETE_PROGRESS_INTERVAL) {
+                log.info("Deleted {} quads from {} graph(s) so far", deleted + chunk.size(), graphs);
+            }
+            deleted += chunk.size();
+        } while (chunk.size() == DELETE_BATCH_SIZE);
+        if (deleted > 0) {
+            log.debug("Deleted {} quads from {} graph(s)", deleted, graphs);
         }
-        throw new AccessDeniedException("User is not allowed to clear dataset.");
     }
 
     @Override
@@ -253,7 +673,48 @@ public class SecuredDatasetGraph implements DatasetGraph {
 
     @Override
     public long size() {
-        return -1;
+        ReadableGraphs graphs = readableGraphs();
+        return graphs == null ? permitted(READ, getBaseGraphNodes()).cardinality() : graphs.getGraphs().size();
+    }
+
+    /**
+     * @return the number of triples in the named graph, counted once per snapshot
+     * of the dataset, so any write commit, be it through this dataset, its graph
+     * views or a direct write, makes it counted anew
+     */
+    public long graphSize(Node graphName) {
+        if (!hasReadAccess(graphName)) {
+            throw new AccessDeniedException("User is not allowed to read triples from graph " + graphName);
+        }
+        long snapshot = readSnapshot();
+        if (snapshot < 0) {
+            return base.getGraph(graphName).size();
+        }
+        GraphSizes cached = graphSizes;
+        if (cached == null || cached.snapshot < snapshot) {
+            cached = new GraphSizes(snapshot);
+            graphSizes = cached;
+        } else if (cached.snapshot > snapshot) {
+            // a transaction older than the cached snapshot
+            return base.getGraph(graphName).size();
+        }
+        Long size = cached.sizes.get(graphName);
+        if (size == null) {
+            size = (long) base.getGraph(graphName).size();
+            cached.sizes.put(graphName, size);
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of triples of each named graph the user may read
+     */
+    public Map<Node, Long> getGraphSizes() {
+        Map<Node, Long> result = new HashMap<>();
+        for (Node graph : listReadableGraphs().getGraphs()) {
+            result.put(graph, graphSize(graph));
+        }
+        return result;
     }
 
     @Override
@@ -268,31 +729,67 @@ public class SecuredDatasetGraph implements DatasetGraph {
 
     @Override
     public void begin(TxnType type) {
-        base.begin();
+        long commitsBefore = commits.get();
+        base.begin(type);
+        transactionState.set(new TransactionState(securityEvaluator::getPrincipal, commitsBefore, commits.get()));
     }
 
     @Override
     public void begin(ReadWrite readWrite) {
+        long commitsBefore = commits.get();
         base.begin(readWrite);
+        transactionState.set(new TransactionState(securityEvaluator::getPrincipal, commitsBefore, commits.get()));
     }
 
     @Override
     public boolean promote(Promote mode) {
-        return base.promote(mode);
+        boolean promoted = base.promote(mode);
+        TransactionState state = transactionState.get();
+        if (promoted && state != null) {
+            // a transaction promoted in read committed mode sees later commits
+            state.readableGraphs = null;
+        }
+        return promoted;
     }
 
     @Override
     public void commit() {
-        base.commit();
+        if (securityGraphChanges.get().isEmpty()) {
+            commitBase();
+            return;
+        }
+        // the next writer may commit as soon as this one has, its changes must
+        // not reach the listeners before these
+        synchronized (securityGraphPublication) {
+            commitBase();
+            publishSecurityGraphChanges();
+        }
+    }
+
+    private void commitBase() {
+        boolean write = isWriting();
+        if (write) {
+            commits.incrementAndGet();
+        }
+        try {
+            base.commit();
+        } finally {
+            if (write) {
+                commits.incrementAndGet();
+            }
+        }
     }
 
     @Override
     public void abort() {
+        securityGraphChanges.get().clear();
         base.abort();
     }
 
     @Override
     public void end() {
+        securityGraphChanges.remove();
+        transactionState.remove();
         base.end();
     }
 
@@ -310,4 +807,139 @@ public class SecuredDatasetGraph implements DatasetGraph {
     public boolean isInTransaction() {
         return base.isInTransaction();
     }
+
+    private static final class TransactionState {
+
+        private final DecisionMemo decisions;
+
+        // number of commits the transaction sees, -1 if a commit was in progress when it began
+        private final long snapshot;
+
+        private ReadableGraphs readableGraphs;
+
+        private TransactionState(Supplier<Object> principalSupplier, long commitsBefore, long commitsAfter) {
+            this.decisions = new DecisionMemo(principalSupplier);
+            this.snapshot = commitsBefore == commitsAfter && commitsBefore % 2 == 0 ? commitsBefore : -1;
+        }
+    }
+
+    /**
+     * Closes the iterator it is pulling from along with the one that iterator
+     * wraps, which not all iterators of {@link Iter} pass on.
+     */
+    private static final class ClosingIterator<T> implements Iterator<T>, Closeable {
+
+        private final Iterator<T> iterator;
+        private final Iterator<?> source;
+
+        private ClosingIterator(Iterator<T> iterator, Iterator<?> source) {
+            this.iterator = iterator;
+            this.source = source;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public T next() {
+            return iterator.next();
+        }
+
+        @Override
+        public void close() {
+            try {
+                Iter.close(iterator);
+            } finally {
+                Iter.close(source);
+            }
+        }
+    }
+
+    private static final class GraphNames {
+
+        private final long snapshot;
+        private final List<Node> nodes;
+
+        private GraphNames(long snapshot, List<Node> nodes) {
+            this.snapshot = snapshot;
+            this.nodes = nodes;
+        }
+    }
+
+    private static final class GraphSizes {
+
+        private final long snapshot;
+        private final Map<Node, Long> sizes = new ConcurrentHashMap<>();
+
+        private GraphSizes(long snapshot) {
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * The named graphs a principal may read, in the order they are listed by the base dataset.
+     */
+    static final class ReadableGraphs {
+
+        private final int total;
+        private final List<Node> readable;
+        private final Map<Node, Integer> positions;
+
+        private ReadableGraphs(List<Node> graphs, BitSet permitted) {
+            List<Node> nodes = new ArrayList<>(permitted.cardinality());
+            Map<Node, Integer> nodePositions = new HashMap<>(permitted.cardinality() * 2);
+            permitted.stream().forEach(i -> {
+                nodePositions.put(graphs.get(i), nodes.size());
+                nodes.add(graphs.get(i));
+            });
+            this.total = graphs.size();
+            this.readable = Collections.unmodifiableList(nodes);
+            this.positions = nodePositions;
+        }
+
+        List<Node> getGraphs() {
+            return readable;
+        }
+
+        boolean contains(Node graph) {
+            return positions.containsKey(graph);
+        }
+
+        /**
+         * @return the position of the graph in {@link #getGraphs()}, -1 if it is not readable
+         */
+        int indexOf(Node graph) {
+            Integer position = positions.get(graph);
+            return position == null ? -1 : position;
+        }
+
+        boolean isAll() {
+            return readable.size() == total;
+        }
+
+        /**
+         * @return whether few enough graphs are readable that looking up quads per
+         * readable graph beats scanning all graphs
+         */
+        boolean isFew() {
+            return readable.size() <= total * PER_GRAPH_RATIO;
+        }
+    }
+
+    private static final class SecurityGraphChange {
+
+        private final QuadAction action;
+        private final Node subject;
+        private final Node predicate;
+        private final Node object;
+
+        private SecurityGraphChange(QuadAction action, Node subject, Node predicate, Node object) {
+            this.action = action;
+            this.subject = subject;
+            this.predicate = predicate;
+            this.object = object;
+        }
+    }
 }
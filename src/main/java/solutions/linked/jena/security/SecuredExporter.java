@@ -0,0 +1,195 @@
+package solutions.linked.jena.security;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Node;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.system.Txn;
+import solutions.linked.jena.Settings;
+
+/**
+ * Writes the quads of all graphs of a {@link SecuredDatasetGraph} the user may
+ * read as a stream, reading the graphs in parallel.
+ *
+ * Each graph is read by a task on a fork-join pool, in a read transaction of the
+ * worker thread on the base dataset that sees the same data as the transaction of
+ * the exporting thread. Tasks hand over their quads in batches through a bounded
+ * queue to the exporting thread, which is the only one writing. If a worker can't
+ * see the same data because of a commit in between, the exporting thread reads
+ * the graph itself.
+ */
+@Slf4j
+public class SecuredExporter {
+
+    private static final int BATCH_SIZE = 1024;
+    private static final int QUEUED_BATCHES = 64;
+    private static final long CANCELLATION_CHECK_MILLIS = 100;
+    private static final int PARALLELISM = Settings.getInt("EXPORT_PARALLELISM", Runtime.getRuntime().availableProcessors(), 1);
+
+    private final SecuredDatasetGraph dataset;
+
+    public SecuredExporter(SecuredDatasetGraph dataset) {
+        this.dataset = dataset;
+    }
+
+    /**
+     * Writes the readable quads in a streaming syntax, like N-Quads or RDF Thrift,
+     * within the current read transaction or a new one.
+     */
+    public void export(OutputStream out, Lang lang) {
+        StreamRDF stream = StreamRDFWriter.getWriterStream(out, lang);
+        if (dataset.isInTransaction()) {
+            export(stream);
+        } else {
+            Txn.executeRead(dataset, () -> export(stream));
+        }
+    }
+
+    private void export(StreamRDF stream) {
+        List<Node> graphs = new ArrayList<>(dataset.listReadableGraphs().getGraphs());
+        if (dataset.isDefaultGraphReadable()) {
+            graphs.add(Quad.defaultGraphIRI);
+        }
+        long snapshot = dataset.readSnapshot();
+        BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(PARALLELISM, graphs.size())));
+        stream.start();
+        try {
+            for (Node graph : graphs) {
+                pool.execute(() -> read(graph, snapshot, queue, cancelled));
+            }
+            int pending = graphs.size();
+            while (pending > 0) {
+                Batch batch = queue.take();
+                if (batch.failure != null) {
+                    throw batch.failure;
+                }
+                batch.quads.forEach(stream::quad);
+                if (batch.fallback != null) {
+                    write(dataset.getBase(), batch.fallback, stream);
+                }
+                if (batch.last) {
+                    pending--;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Export interrupted", e);
+        } finally {
+            cancelled.set(true);
+            queue.clear();
+            pool.shutdownNow();
+        }
+        stream.finish();
+    }
+
+    private void read(Node graph, long snapshot, BlockingQueue<Batch> queue, AtomicBoolean cancelled) {
+        DatasetGraph base = dataset.getBase();
+        try {
+            if (!dataset.beginBaseRead(snapshot)) {
+                put(queue, Batch.fallback(graph), cancelled);
+                return;
+            }
+            try {
+                Iterator<Quad> quads = base.find(graph, Node.ANY, Node.ANY, Node.ANY);
+                try {
+                    List<Quad> batch = new ArrayList<>(BATCH_SIZE);
+                    while (quads.hasNext() && !cancelled.get()) {
+                        batch.add(quads.next());
+                        if (batch.size() == BATCH_SIZE) {
+                            put(queue, new Batch(batch, false), cancelled);
+                            batch = new ArrayList<>(BATCH_SIZE);
+                        }
+                    }
+                    put(queue, new Batch(batch, true), cancelled);
+                } finally {
+                    Iter.close(quads);
+                }
+            } finally {
+                base.end();
+            }
+        } catch (RuntimeException e) {
+            log.debug("Failed to export graph " + graph + ": " + e.getMessage(), e);
+            if (!cancelled.get()) {
+                // the exporting thread waits for the last batch of every graph
+                put(queue, Batch.failure(e), cancelled);
+            }
+        }
+    }
+
+    // waits while the queue is full, but not once the exporting thread has given up
+    private static void put(BlockingQueue<Batch> queue, Batch batch, AtomicBoolean cancelled) {
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                private boolean done;
+
+                @Override
+                public boolean block() throws InterruptedException {
+                    while (!done && !cancelled.get()) {
+                        done = queue.offer(batch, CANCELLATION_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return done || cancelled.get() || (done = queue.offer(batch));
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Export cancelled", e);
+        }
+    }
+
+    private static void write(DatasetGraph base, Node graph, StreamRDF stream) {
+        Iterator<Quad> quads = base.find(graph, Node.ANY, Node.ANY, Node.ANY);
+        try {
+            quads.forEachRemaining(stream::quad);
+        } finally {
+            Iter.close(quads);
+        }
+    }
+
+    private static final class Batch {
+
+        private final List<Quad> quads;
+        private final boolean last;
+        private Node fallback;
+        private RuntimeException failure;
+
+        private Batch(List<Quad> quads, boolean last) {
+            this.quads = quads;
+            this.last = last;
+        }
+
+        // a graph the exporting thread has to read itself
+        private static Batch fallback(Node graph) {
+            Batch batch = new Batch(Collections.emptyList(), true);
+            batch.fallback = graph;
+            return batch;
+        }
+
+        private static Batch failure(RuntimeException failure) {
+            Batch batch = new Batch(Collections.emptyList(), true);
+            batch.failure = failure;
+            return batch;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package solutions.linked.jena.security;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.apache.jena.atlas.lib.tuple.Tuple;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.permissions.SecurityEvaluator.Action;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.OpVisitor;
+import org.apache.jena.sparql.algebra.OpVisitorBase;
+import org.apache.jena.sparql.algebra.Table;
+import org.apache.jena.sparql.algebra.TableFactory;
+import org.apache.jena.sparql.algebra.TransformCopy;
+import org.apache.jena.sparql.algebra.Transformer;
+import org.apache.jena.sparql.algebra.op.OpBGP;
+import org.apache.jena.sparql.algebra.op.OpDatasetNames;
+import org.apache.jena.sparql.algebra.op.OpGraph;
+import org.apache.jena.sparql.algebra.op.OpJoin;
+import org.apache.jena.sparql.algebra.op.OpPath;
+import org.apache.jena.sparql.algebra.op.OpProcedure;
+import org.apache.jena.sparql.algebra.op.OpPropFunc;
+import org.apache.jena.sparql.algebra.op.OpQuad;
+import org.apache.jena.sparql.algebra.op.OpQuadBlock;
+import org.apache.jena.sparql.algebra.op.OpQuadPattern;
+import org.apache.jena.sparql.algebra.op.OpTable;
+import org.apache.jena.sparql.algebra.op.OpTriple;
+import org.apache.jena.sparql.algebra.walker.Walker;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.Plan;
+import org.apache.jena.sparql.engine.QueryEngineFactory;
+import org.apache.jena.sparql.engine.QueryEngineRegistry;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.expr.ExprFunctionOp;
+import org.apache.jena.sparql.expr.ExprVisitor;
+import org.apache.jena.sparql.expr.ExprVisitorBase;
+import org.apache.jena.sparql.pfunction.PropertyFunctionRegistry;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+import org.apache.jena.tdb2.sys.SystemTDB;
+import org.apache.jena.tdb2.sys.TDBInternal;
+
+/**
+ * Runs queries on a {@link SecuredDatasetGraph} backed by TDB2 with TDB2's own
+ * engine on the base dataset. Quads of graphs that may not be read are dropped
+ * inside the index scans by a filter on the NodeId of their graph, installed as
+ * {@link SystemTDB#symTupleFilter} in the context of the query, before any of
+ * their nodes are decoded.
+ *
+ * The filter is built from the graphs readable in the current transaction, so
+ * the factory only accepts queries on datasets with {@code fo:nodeIdFilter}
+ * enabled within read transactions. The filter only applies to the scans of
+ * basic graph patterns and quad patterns, so queries with anything reading the
+ * dataset otherwise are left to the secured dataset: property paths and property
+ * functions, which read through {@code Graph.find}, {@code GRAPH} over anything
+ * but quad patterns, which iterates all graph names, and patterns that list graph
+ * names without matching any quads, which TDB2 would list from its unfiltered
+ * node table.
+ *
+ * When only few graphs are readable, {@code GRAPH ?g} patterns are joined with a
+ * table of the readable graphs, so TDB2 looks them up by graph in its GSPO/GPOS
+ * indexes rather than scanning all graphs and filtering.
+ *
+ * Queries that only read constant graphs, given by {@code FROM} and
+ * {@code FROM NAMED} or by {@code GRAPH <iri>} patterns, are authorized once
+ * and run on the base dataset, on any secured dataset. If one of their graphs
+ * may not be read they are left to the other paths.
+ */
+public class SecuredQueryEngineFactory implements QueryEngineFactory {
+
+    private static final SecuredQueryEngineFactory INSTANCE = new SecuredQueryEngineFactory();
+
+    public static void register() {
+        QueryEngineRegistry.addFactory(INSTANCE);
+    }
+
+    @Override
+    public boolean accept(Query query, DatasetGraph dataset, Context context) {
+        return isPreAuthorized(query, dataset, context) ||
+                (accept(dataset) && isFilteredByNodeId(Algebra.compile(query), context));
+    }
+
+    @Override
+    public Plan create(Query query, DatasetGraph dataset, Binding inputBinding, Context context) {
+        SecuredDatasetGraph securedDataset = (SecuredDatasetGraph) dataset;
+        if (isPreAuthorized(query, dataset, context)) {
+            DatasetGraph base = securedDataset.getBase();
+            return QueryEngineRegistry.findFactory(query, base, context).create(query, base, inputBinding, context);
+        }
+        if (!securedDataset.readableGraphs().isFew()) {
+            DatasetGraph base = securedDataset.getBase();
+            Context cxt = withTupleFilter(securedDataset, context);
+            return QueryEngineRegistry.findFactory(query, base, cxt).create(query, base, inputBinding, cxt);
+        }
+        query.setResultVars();
+        return create(Algebra.compile(query), dataset, inputBinding, context);
+    }
+
+    @Override
+    public boolean accept(Op op, DatasetGraph dataset, Context context) {
+        return accept(dataset) && isFilteredByNodeId(op, context);
+    }
+
+    @Override
+    public Plan create(Op op, DatasetGraph dataset, Binding inputBinding, Context context) {
+        SecuredDatasetGraph securedDataset = (SecuredDatasetGraph) dataset;
+        DatasetGraph base = securedDataset.getBase();
+        Context cxt = withTupleFilter(securedDataset, context);
+        SecuredDatasetGraph.ReadableGraphs readableGraphs = securedDataset.readableGraphs();
+        if (readableGraphs.isFew()) {
+            op = Transformer.transform(new ReadableGraphsTransform(readableGraphs.getGraphs()), op);
+        }
+        return QueryEngineRegistry.findFactory(op, base, cxt).create(op, base, inputBinding, cxt);
+    }
+
+    private static boolean isPreAuthorized(Query query, DatasetGraph dataset, Context context) {
+        if (!(dataset instanceof SecuredDatasetGraph)) {
+            return false;
+        }
+        Set<Node> graphs = readGraphs(query, SecuredDatasetGraph.isUnionDefaultGraph(context));
+        return graphs != null && ((SecuredDatasetGraph) dataset).isPermitted(Action.Read, graphs);
+    }
+
+    /**
+     * @return the graphs the query reads, {@code null} if they aren't constant
+     */
+    static Set<Node> readGraphs(Query query, boolean unionDefaultGraph) {
+        if (query.isDescribeType()) {
+            // describe handlers read the default graph beyond the pattern
+            return null;
+        }
+        Set<Node> graphs = new LinkedHashSet<>();
+        if (query.hasDatasetDescription()) {
+            query.getGraphURIs().forEach(uri -> graphs.add(NodeFactory.createURI(uri)));
+            query.getNamedGraphURIs().forEach(uri -> graphs.add(NodeFactory.createURI(uri)));
+            return graphs.stream().anyMatch(Quad::isUnionGraph) ? null : graphs;
+        }
+        PatternGraphs pattern = PatternGraphs.of(query.getQueryPattern());
+        if (pattern == null || (pattern.readsDefaultGraph() && unionDefaultGraph)) {
+            return null;
+        }
+        if (pattern.readsDefaultGraph()) {
+            graphs.add(Quad.defaultGraphIRI);
+        }
+        graphs.addAll(pattern.getNamedGraphs());
+        return graphs;
+    }
+
+    private static boolean accept(DatasetGraph dataset) {
+        if (!(dataset instanceof SecuredDatasetGraph)) {
+            return false;
+        }
+        SecuredDatasetGraph securedDataset = (SecuredDatasetGraph) dataset;
+        return securedDataset.isNodeIdFilter() &&
+                TDBInternal.isTDB2(securedDataset.getBase()) &&
+                securedDataset.isInTransaction() &&
+                securedDataset.readableGraphs() != null;
+    }
+
+    private static Context withTupleFilter(SecuredDatasetGraph securedDataset, Context context) {
+        Context cxt = context == null ? new Context() : context.copy();
+        boolean defaultGraphReadable = securedDataset.isDefaultGraphReadable();
+        SecuredDatasetGraph.ReadableGraphs readableGraphs = securedDataset.readableGraphs();
+        if (defaultGraphReadable && readableGraphs.isAll()) {
+            return cxt;
+        }
+        NodeTable nodeTable = TDBInternal.getDatasetGraphTDB(securedDataset.getBase())
+                .getQuadTable().getNodeTupleTable().getNodeTable();
+        Set<NodeId> readable = new HashSet<>();
+        for (Node graph : readableGraphs.getGraphs()) {
+            NodeId id = nodeTable.getNodeIdForNode(graph);
+            if (!NodeId.isDoesNotExist(id)) {
+                readable.add(id);
+            }
+        }
+        // triples are in the default graph, quads have their graph first
+        Predicate<Tuple<NodeId>> filter = tuple -> tuple.len() == 4 ? readable.contains(tuple.get(0)) : defaultGraphReadable;
+        cxt.set(SystemTDB.symTupleFilter, filter);
+        return cxt;
+    }
+
+    /**
+     * Joins patterns on a variable graph with the readable graphs. This doesn't
+     * change results, the tuple filter drops quads of other graphs anyway.
+     */
+    private static final class ReadableGraphsTransform extends TransformCopy {
+
+        private final List<Node> readableGraphs;
+
+        private ReadableGraphsTransform(List<Node> readableGraphs) {
+            this.readableGraphs = readableGraphs;
+        }
+
+        @Override
+        public Op transform(OpGraph opGraph, Op subOp) {
+            Op op = super.transform(opGraph, subOp);
+            return opGraph.getNode().isVariable() ? joinReadable(Var.alloc(opGraph.getNode()), op) : op;
+        }
+
+        @Override
+        public Op transform(OpQuadPattern quadPattern) {
+            Node graph = quadPattern.getGraphNode();
+            return graph.isVariable() ? joinReadable(Var.alloc(graph), quadPattern) : quadPattern;
+        }
+
+        private Op joinReadable(Var graphVar, Op op) {
+            Table table = TableFactory.create();
+            for (Node graph : readableGraphs) {
+                table.addBinding(BindingFactory.binding(graphVar, graph));
+            }
+            return OpJoin.create(OpTable.create(table), op);
+        }
+    }
+
+    /**
+     * @return whether the op only reads quads through scans the tuple filter applies to
+     */
+    static boolean isFilteredByNodeId(Op op, Context context) {
+        PropertyFunctionRegistry propertyFunctions = PropertyFunctionRegistry.chooseRegistry(context == null ? ARQ.getContext() : context);
+        boolean[] unfiltered = {false};
+        OpVisitor opVisitor = new OpVisitorBase() {
+            @Override
+            public void visit(OpBGP opBGP) {
+                checkPredicates(opBGP.getPattern().getList());
+            }
+
+            @Override
+            public void visit(OpQuadPattern quadPattern) {
+                checkPredicates(quadPattern.getBasicPattern().getList());
+            }
+
+            // left by the quad form around anything but basic graph patterns
+            @Override
+            public void visit(OpGraph opGraph) {
+                unfiltered[0] = true;
+            }
+
+            @Override
+            public void visit(OpDatasetNames dsNames) {
+                unfiltered[0] = true;
+            }
+
+            @Override
+            public void visit(OpPath opPath) {
+                unfiltered[0] = true;
+            }
+
+            @Override
+            public void visit(OpPropFunc opPropFunc) {
+                unfiltered[0] = true;
+            }
+
+            @Override
+            public void visit(OpProcedure opProc) {
+                unfiltered[0] = true;
+            }
+
+            @Override
+            public void visit(OpTriple opTriple) {
+                unfiltered[0] = true;
+            }
+
+            @Override
+            public void visit(OpQuad opQuad) {
+                unfiltered[0] = true;
+            }
+
+            @Override
+            public void visit(OpQuadBlock quadBlock) {
+                unfiltered[0] = true;
+            }
+
+            // property functions are only recognized when the query is optimized
+            private void checkPredicates(List<Triple> triples) {
+                for (Triple triple : triples) {
+                    Node predicate = triple.getPredicate();
+                    if (predicate.isURI() && propertyFunctions.isRegistered(predicate.getURI())) {
+                        unfiltered[0] = true;
+                    }
+                }
+            }
+        };
+        ExprVisitor exprVisitor = new ExprVisitorBase() {
+            @Override
+            public void visit(ExprFunctionOp funcOp) {
+                if (!isFilteredByNodeId(funcOp.getGraphPattern(), context)) {
+                    unfiltered[0] = true;
+                }
+            }
+        };
+        Walker.walk(Algebra.toQuadForm(op), opVisitor, exprVisitor);
+        return !unfiltered[0];
+    }
+}
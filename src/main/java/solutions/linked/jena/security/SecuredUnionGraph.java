@@ -0,0 +1,102 @@
+package solutions.linked.jena.security;
+
+import java.util.Iterator;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.tdb2.sys.TDBInternal;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.NiceIterator;
+import org.apache.jena.util.iterator.NullIterator;
+
+/**
+ * Read-only union of the named graphs of a {@link SecuredDatasetGraph} the
+ * principal may read, without duplicates.
+ *
+ * If all named graphs are readable this is the union graph of the base dataset,
+ * with TDB2 that is its native union graph. Otherwise results are streamed and
+ * duplicates suppressed without remembering the triples returned so far: a
+ * pattern with a bound term is answered by TDB2 from an index with the graph
+ * last, so copies of a triple in different graphs are adjacent. Other patterns
+ * are matched graph by graph and a triple is only returned from the first
+ * readable graph containing it.
+ *
+ * With {@code unionDefaultGraph} set in the context of the dataset this is also
+ * its default graph.
+ */
+class SecuredUnionGraph extends GraphBase {
+
+    private final SecuredDatasetGraph dataset;
+
+    SecuredUnionGraph(SecuredDatasetGraph dataset) {
+        this.dataset = dataset;
+    }
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(Triple pattern) {
+        Node s = pattern.getMatchSubject();
+        Node p = pattern.getMatchPredicate();
+        Node o = pattern.getMatchObject();
+        DatasetGraph base = dataset.getBase();
+        SecuredDatasetGraph.ReadableGraphs graphs = dataset.listReadableGraphs();
+        if (graphs.isAll()) {
+            return base.getUnionGraph().find(s, p, o);
+        }
+        if (graphs.getGraphs().isEmpty()) {
+            return NullIterator.instance();
+        }
+        boolean bound = SecuredDatasetGraph.isBound(s) || SecuredDatasetGraph.isBound(p) || SecuredDatasetGraph.isBound(o);
+        if (bound && TDBInternal.isTDB2(base)) {
+            Iterator<Quad> quads = Iter.filter(base.findNG(Node.ANY, s, p, o), q -> graphs.contains(q.getGraph()));
+            return extended(Iter.distinctAdjacent(Iter.map(quads, Quad::asTriple)));
+        }
+        Iterator<Triple> triples = Iter.flatMap(graphs.getGraphs().iterator(), graph -> {
+            int position = graphs.indexOf(graph);
+            Iterator<Quad> quads = base.findNG(graph, s, p, o);
+            if (position > 0) {
+                quads = Iter.filter(quads, q -> isFirstReadable(base, graphs, q, position));
+            }
+            return Iter.map(quads, Quad::asTriple);
+        });
+        return extended(triples);
+    }
+
+    // whether no graph listed before the one of the quad contains its triple
+    private static boolean isFirstReadable(DatasetGraph base, SecuredDatasetGraph.ReadableGraphs graphs, Quad quad, int position) {
+        Iterator<Quad> copies = base.findNG(Node.ANY, quad.getSubject(), quad.getPredicate(), quad.getObject());
+        try {
+            while (copies.hasNext()) {
+                int copyPosition = graphs.indexOf(copies.next().getGraph());
+                if (copyPosition >= 0 && copyPosition < position) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            Iter.close(copies);
+        }
+    }
+
+    private static ExtendedIterator<Triple> extended(Iterator<Triple> triples) {
+        return new NiceIterator<Triple>() {
+            @Override
+            public boolean hasNext() {
+                return triples.hasNext();
+            }
+
+            @Override
+            public Triple next() {
+                return triples.next();
+            }
+
+            @Override
+            public void close() {
+                Iter.close(triples);
+            }
+        };
+    }
+}
@@ -0,0 +1,197 @@
+package solutions.linked.jena.security;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.permissions.SecurityEvaluator.Action;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.modify.UpdateEngine;
+import org.apache.jena.sparql.modify.UpdateEngineFactory;
+import org.apache.jena.sparql.modify.UpdateEngineMain;
+import org.apache.jena.sparql.modify.UpdateEngineRegistry;
+import org.apache.jena.sparql.modify.UpdateEngineWorker;
+import org.apache.jena.sparql.modify.request.UpdateAdd;
+import org.apache.jena.sparql.modify.request.UpdateClear;
+import org.apache.jena.sparql.modify.request.UpdateCopy;
+import org.apache.jena.sparql.modify.request.UpdateCreate;
+import org.apache.jena.sparql.modify.request.UpdateDataDelete;
+import org.apache.jena.sparql.modify.request.UpdateDataInsert;
+import org.apache.jena.sparql.modify.request.UpdateDeleteWhere;
+import org.apache.jena.sparql.modify.request.UpdateDrop;
+import org.apache.jena.sparql.modify.request.UpdateLoad;
+import org.apache.jena.sparql.modify.request.UpdateModify;
+import org.apache.jena.sparql.modify.request.UpdateMove;
+import org.apache.jena.sparql.modify.request.UpdateVisitor;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.update.Update;
+
+/**
+ * Runs SPARQL Update operations on a {@link SecuredDatasetGraph}, authorizing the
+ * graphs an operation reads and writes before it starts when they are known from
+ * the operation itself, see {@link UpdateTargets}. Such operations then run on
+ * the base dataset without a check per quad, and fail before changing anything
+ * if a graph may not be accessed.
+ *
+ * Operations with variable graphs and those changing the security graph, whose
+ * changes have to reach the security graph listeners, run on the secured dataset.
+ */
+public class SecuredUpdateEngineFactory implements UpdateEngineFactory {
+
+    private static final SecuredUpdateEngineFactory INSTANCE = new SecuredUpdateEngineFactory();
+
+    public static void register() {
+        UpdateEngineRegistry.addFactory(INSTANCE);
+    }
+
+    @Override
+    public boolean accept(DatasetGraph datasetGraph, Context context) {
+        return datasetGraph instanceof SecuredDatasetGraph;
+    }
+
+    @Override
+    public UpdateEngine create(DatasetGraph datasetGraph, Binding inputBinding, Context context) {
+        return new UpdateEngineMain(datasetGraph, inputBinding, context) {
+            @Override
+            protected UpdateVisitor prepareWorker() {
+                return new PreAuthorizingWorker((SecuredDatasetGraph) datasetGraph, inputBinding, context);
+            }
+        };
+    }
+
+    private static final class PreAuthorizingWorker extends UpdateEngineWorker {
+
+        private final SecuredDatasetGraph dataset;
+        private final UpdateEngineWorker baseWorker;
+        private final boolean unionDefaultGraph;
+
+        private PreAuthorizingWorker(SecuredDatasetGraph dataset, Binding inputBinding, Context context) {
+            super(dataset, inputBinding, context);
+            this.dataset = dataset;
+            this.baseWorker = new UpdateEngineWorker(dataset.getBase(), inputBinding, context);
+            this.unionDefaultGraph = SecuredDatasetGraph.isUnionDefaultGraph(context);
+        }
+
+        private boolean preAuthorize(Update update) {
+            UpdateTargets targets = UpdateTargets.of(update, unionDefaultGraph);
+            if (targets == null) {
+                return false;
+            }
+            Set<Node> written = new LinkedHashSet<>(targets.getCreate());
+            written.addAll(targets.getDelete());
+            if (written.stream().anyMatch(dataset::isSecurityGraph)) {
+                return false;
+            }
+            authorize(Action.Read, targets.getRead());
+            authorize(Action.Create, targets.getCreate());
+            authorize(Action.Delete, targets.getDelete());
+            return true;
+        }
+
+        private void authorize(Action action, Set<Node> graphs) {
+            if (!graphs.isEmpty()) {
+                dataset.authorize(action, graphs);
+            }
+        }
+
+        @Override
+        public void visit(UpdateDrop update) {
+            if (preAuthorize(update)) {
+                baseWorker.visit(update);
+            } else {
+                super.visit(update);
+            }
+        }
+
+        @Override
+        public void visit(UpdateClear update) {
+            if (preAuthorize(update)) {
+                baseWorker.visit(update);
+            } else {
+                super.visit(update);
+            }
+        }
+
+        @Override
+        public void visit(UpdateCreate update) {
+            if (preAuthorize(update)) {
+                baseWorker.visit(update);
+            } else {
+                super.visit(update);
+            }
+        }
+
+        @Override
+        public void visit(UpdateLoad update) {
+            if (preAuthorize(update)) {
+                baseWorker.visit(update);
+            } else {
+                super.visit(update);
+            }
+        }
+
+        @Override
+        public void visit(UpdateAdd update) {
+            if (preAuthorize(update)) {
+                baseWorker.visit(update);
+            } else {
+                super.visit(update);
+            }
+        }
+
+        @Override
+        public void visit(UpdateCopy update) {
+            if (preAuthorize(update)) {
+                baseWorker.visit(update);
+            } else {
+                super.visit(update);
+            }
+        }
+
+        @Override
+        public void visit(UpdateMove update) {
+            if (preAuthorize(update)) {
+                baseWorker.visit(update);
+            } else {
+                super.visit(update);
+            }
+        }
+
+        @Override
+        public void visit(UpdateDataInsert update) {
+            if (preAuthorize(update)) {
+                baseWorker.visit(update);
+            } else {
+                super.visit(update);
+            }
+        }
+
+        @Override
+        public void visit(UpdateDataDelete update) {
+            if (preAuthorize(update)) {
+                baseWorker.visit(update);
+            } else {
+                super.visit(update);
+            }
+        }
+
+        @Override
+        public void visit(UpdateDeleteWhere update) {
+            if (preAuthorize(update)) {
+                baseWorker.visit(update);
+            } else {
+                super.visit(update);
+            }
+        }
+
+        @Override
+        public void visit(UpdateModify update) {
+            if (preAuthorize(update)) {
+                baseWorker.visit(update);
+            } else {
+                super.visit(update);
+            }
+        }
+    }
+}
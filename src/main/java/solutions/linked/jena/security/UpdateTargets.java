@@ -0,0 +1,157 @@
+package solutions.linked.jena.security;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.modify.request.Target;
+import org.apache.jena.sparql.modify.request.UpdateAdd;
+import org.apache.jena.sparql.modify.request.UpdateBinaryOp;
+import org.apache.jena.sparql.modify.request.UpdateCreate;
+import org.apache.jena.sparql.modify.request.UpdateDataDelete;
+import org.apache.jena.sparql.modify.request.UpdateDataInsert;
+import org.apache.jena.sparql.modify.request.UpdateDeleteWhere;
+import org.apache.jena.sparql.modify.request.UpdateDropClear;
+import org.apache.jena.sparql.modify.request.UpdateLoad;
+import org.apache.jena.sparql.modify.request.UpdateModify;
+import org.apache.jena.sparql.modify.request.UpdateMove;
+import org.apache.jena.update.Update;
+
+/**
+ * The graphs a SPARQL Update operation reads from, creates triples in and
+ * deletes triples from, when they are known before it runs. The default graph
+ * is represented by {@link Quad#defaultGraphIRI}.
+ *
+ * Operations whose graphs depend on the data, like templates or patterns with a
+ * variable graph, have no static targets, see {@link PatternGraphs}.
+ */
+final class UpdateTargets {
+
+    private final Set<Node> read = new LinkedHashSet<>();
+    private final Set<Node> create = new LinkedHashSet<>();
+    private final Set<Node> delete = new LinkedHashSet<>();
+
+    private UpdateTargets() {
+    }
+
+    Set<Node> getRead() {
+        return read;
+    }
+
+    Set<Node> getCreate() {
+        return create;
+    }
+
+    Set<Node> getDelete() {
+        return delete;
+    }
+
+    /**
+     * @param unionDefaultGraph whether the default graph of the dataset is the
+     *                          union of its named graphs
+     * @return the graphs of the operation, {@code null} if they aren't known
+     * before it runs
+     */
+    static UpdateTargets of(Update update, boolean unionDefaultGraph) {
+        UpdateTargets targets = new UpdateTargets();
+        boolean known;
+        if (update instanceof UpdateDataInsert) {
+            known = targets.addGraphs(((UpdateDataInsert) update).getQuads(), null, targets.create);
+        } else if (update instanceof UpdateDataDelete) {
+            known = targets.addGraphs(((UpdateDataDelete) update).getQuads(), null, targets.delete);
+        } else if (update instanceof UpdateDeleteWhere) {
+            List<Quad> quads = ((UpdateDeleteWhere) update).getQuads();
+            known = targets.addGraphs(quads, null, targets.read) && targets.addGraphs(quads, null, targets.delete);
+        } else if (update instanceof UpdateModify) {
+            known = targets.addModify((UpdateModify) update);
+        } else if (update instanceof UpdateDropClear) {
+            UpdateDropClear dropClear = (UpdateDropClear) update;
+            known = dropClear.isOneGraph() || dropClear.isDefault();
+            if (known) {
+                targets.delete.add(dropClear.isDefault() ? Quad.defaultGraphIRI : dropClear.getGraph());
+            }
+        } else if (update instanceof UpdateCreate) {
+            known = true;
+            targets.create.add(((UpdateCreate) update).getGraph());
+        } else if (update instanceof UpdateLoad) {
+            known = true;
+            Node dest = ((UpdateLoad) update).getDest();
+            targets.create.add(dest == null ? Quad.defaultGraphIRI : dest);
+        } else if (update instanceof UpdateBinaryOp) {
+            known = targets.addBinaryOp((UpdateBinaryOp) update);
+        } else {
+            known = false;
+        }
+        if (!known || (unionDefaultGraph && targets.read.contains(Quad.defaultGraphIRI)) || targets.usesUnionGraph()) {
+            return null;
+        }
+        return targets;
+    }
+
+    private boolean usesUnionGraph() {
+        return read.stream().anyMatch(Quad::isUnionGraph) ||
+                create.stream().anyMatch(Quad::isUnionGraph) ||
+                delete.stream().anyMatch(Quad::isUnionGraph);
+    }
+
+    private boolean addModify(UpdateModify modify) {
+        Node with = modify.getWithIRI();
+        if (!addGraphs(modify.getDeleteQuads(), with, delete) || !addGraphs(modify.getInsertQuads(), with, create)) {
+            return false;
+        }
+        PatternGraphs pattern = PatternGraphs.of(modify.getWherePattern());
+        if (pattern == null) {
+            return false;
+        }
+        read.addAll(pattern.getNamedGraphs());
+        if (pattern.readsDefaultGraph()) {
+            if (!modify.getUsing().isEmpty()) {
+                read.addAll(modify.getUsing());
+            } else {
+                read.add(with == null ? Quad.defaultGraphIRI : with);
+            }
+        }
+        return true;
+    }
+
+    private boolean addBinaryOp(UpdateBinaryOp op) {
+        Node src = graph(op.getSrc());
+        Node dest = graph(op.getDest());
+        if (src == null || dest == null) {
+            return false;
+        }
+        read.add(src);
+        create.add(dest);
+        if (!(op instanceof UpdateAdd)) {
+            // COPY and MOVE replace the destination
+            delete.add(dest);
+        }
+        if (op instanceof UpdateMove) {
+            delete.add(src);
+        }
+        return true;
+    }
+
+    private static Node graph(Target target) {
+        if (target.isDefault()) {
+            return Quad.defaultGraphIRI;
+        }
+        return target.isOneNamedGraph() ? target.getGraph() : null;
+    }
+
+    private static boolean addGraphs(Collection<Quad> quads, Node with, Set<Node> graphs) {
+        for (Quad quad : quads) {
+            Node graph = quad.getGraph();
+            if (quad.isDefaultGraph()) {
+                graph = with == null ? Quad.defaultGraphIRI : with;
+            } else if (!graph.isURI()) {
+                return false;
+            }
+            graphs.add(graph);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,46 @@
+package solutions.linked.jena;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class SettingsTest {
+
+    private static final String NAME = "SETTINGS_TEST_VALUE";
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty(NAME);
+    }
+
+    @Test
+    void readsTrimmedSystemProperty() {
+        assertThat(Settings.get(NAME, null), nullValue());
+        System.setProperty(NAME, " 42 ");
+        assertThat(Settings.get(NAME, null), equalTo("42"));
+        assertThat(Settings.getLong(NAME, 7, 0), equalTo(42L));
+        assertThat(Settings.getInt(NAME, 7, 0), equalTo(42));
+    }
+
+    @Test
+    void usesDefaultForInvalidNumbers() {
+        System.setProperty(NAME, "1O0");
+        assertThat(Settings.getLong(NAME, 7, 0), equalTo(7L));
+        System.setProperty(NAME, "");
+        assertThat(Settings.getInt(NAME, 7, 0), equalTo(7));
+        System.setProperty(NAME, "10000000000");
+        assertThat(Settings.getInt(NAME, 7, 0), equalTo(7));
+    }
+
+    @Test
+    void usesDefaultForNumbersBelowMinimum() {
+        System.setProperty(NAME, "-1");
+        assertThat(Settings.getLong(NAME, 7, 0), equalTo(7L));
+        System.setProperty(NAME, "0");
+        assertThat(Settings.getInt(NAME, 7, 1), equalTo(7));
+        assertThat(Settings.getInt(NAME, 7, 0), equalTo(0));
+    }
+}
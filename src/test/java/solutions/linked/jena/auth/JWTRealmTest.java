@@ -0,0 +1,113 @@
+package solutions.linked.jena.auth;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authz.AuthorizationInfo;
+import org.apache.shiro.mgt.DefaultSecurityManager;
+import org.apache.shiro.realm.AuthorizingRealm;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.Subject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class JWTRealmTest {
+
+    private final AtomicInteger authentications = new AtomicInteger();
+    private final AtomicInteger authorizations = new AtomicInteger();
+    private final AtomicInteger otherRealmCalls = new AtomicInteger();
+    private DefaultSecurityManager securityManager;
+
+    @BeforeEach
+    void setUp() {
+        JWTRealm realm = new JWTRealm() {
+            @Override
+            protected AuthenticationInfo doGetAuthenticationInfo(AuthenticationToken token) {
+                authentications.incrementAndGet();
+                return super.doGetAuthenticationInfo(token);
+            }
+
+            @Override
+            protected AuthorizationInfo doGetAuthorizationInfo(PrincipalCollection principals) {
+                authorizations.incrementAndGet();
+                return super.doGetAuthorizationInfo(principals);
+            }
+        };
+        AuthorizingRealm otherRealm = new AuthorizingRealm() {
+            @Override
+            public boolean supports(AuthenticationToken token) {
+                return true;
+            }
+
+            @Override
+            protected AuthorizationInfo doGetAuthorizationInfo(PrincipalCollection principals) {
+                otherRealmCalls.incrementAndGet();
+                return null;
+            }
+
+            @Override
+            protected AuthenticationInfo doGetAuthenticationInfo(AuthenticationToken token) {
+                otherRealmCalls.incrementAndGet();
+                return null;
+            }
+        };
+        securityManager = new DefaultSecurityManager();
+        securityManager.setAuthenticator(new JWTRealmAuthenticator());
+        securityManager.setAuthorizer(new JWTRealmAuthorizer());
+        securityManager.setRealms(Arrays.asList(realm, otherRealm));
+    }
+
+    private Subject login(String token) {
+        Subject subject = new Subject.Builder(securityManager).buildSubject();
+        subject.login(new JWTAuthToken(token, "user.one@mail.com", new HashSet<>(Arrays.asList("user", "/editors"))));
+        return subject;
+    }
+
+    @Test
+    void authorizesRolesClaimedByToken() {
+        Subject subject = login("token");
+        assertThat(subject.getPrincipal(), equalTo("user.one@mail.com"));
+        assertTrue(subject.hasRole("user"));
+        assertTrue(subject.hasRole("/editors"));
+        assertFalse(subject.hasRole("admin"));
+    }
+
+    @Test
+    void keepsNoTokensInAuthenticationCache() {
+        login("token");
+        login("token");
+        assertThat(authentications.get(), equalTo(2));
+    }
+
+    @Test
+    void authorizesPrincipalsOnce() {
+        login("token").hasRole("user");
+        login("token").hasRole("admin");
+        login("other token").hasRole("/editors");
+        assertThat(authorizations.get(), equalTo(1));
+    }
+
+    @Test
+    void asksNoOtherRealmAboutTokens() {
+        Subject subject = login("token");
+        subject.hasRole("user");
+        subject.isPermitted("graph:read");
+        assertThat(otherRealmCalls.get(), equalTo(0));
+    }
+
+    @Test
+    void authorizesTokenWithoutRoles() {
+        Subject subject = new Subject.Builder(securityManager).buildSubject();
+        subject.login(new JWTAuthToken("token", "user.one@mail.com", Collections.emptySet()));
+        assertFalse(subject.hasRole("user"));
+    }
+}
@@ -0,0 +1,213 @@
+package solutions.linked.jena.auth;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class JWTVerifierTest {
+
+    private static final Base64.Encoder BASE64 = Base64.getUrlEncoder().withoutPadding();
+
+    private KeyPair rsaKey;
+    private KeyPair ecKey;
+    private Path jwksFile;
+    private JWTVerifier verifier;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        rsaKey = rsaKey();
+        KeyPairGenerator ecGenerator = KeyPairGenerator.getInstance("EC");
+        ecGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+        ecKey = ecGenerator.generateKeyPair();
+        jwksFile = Files.createTempFile("jwks", ".json");
+        writeKeySet(rsaJwk("rsa-1", rsaKey) + "," + ecJwk("ec-1", ecKey));
+        verifier = verifier(null);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        verifier.close();
+        Files.deleteIfExists(jwksFile);
+    }
+
+    private JWTVerifier verifier(String audience) throws IOException {
+        return new JWTVerifier(new JsonWebKeySet(jwksFile.toUri().toURL(), 3600, 0), "email", null, audience);
+    }
+
+    @Test
+    void verifiesRs256Token() throws Exception {
+        String token = token("RS256", "rsa-1", rsaKey.getPrivate(), claims("user.one@mail.com", 300));
+        assertThat(verifier.verify(token).getPrincipal(), equalTo("user.one@mail.com"));
+    }
+
+    @Test
+    void verifiesEs256Token() throws Exception {
+        String token = token("ES256", "ec-1", ecKey.getPrivate(), claims("user.two@mail.com", 300));
+        assertThat(verifier.verify(token).getPrincipal(), equalTo("user.two@mail.com"));
+    }
+
+    @Test
+    void readsRolesAndGroups() throws Exception {
+        String token = token("RS256", "rsa-1", rsaKey.getPrivate(), claims("user.one@mail.com", 300));
+        assertThat(verifier.verify(token).getRoles(), equalTo(new HashSet<>(Arrays.asList("user", "/editors"))));
+    }
+
+    @Test
+    void rejectsTamperedToken() throws Exception {
+        String token = token("RS256", "rsa-1", rsaKey.getPrivate(), claims("user.one@mail.com", 300));
+        String[] parts = token.split("\\.");
+        String tampered = parts[0] + "." + BASE64.encodeToString(claims("user.five@mail.com", 300).getBytes(StandardCharsets.UTF_8)) + "." + parts[2];
+        assertThrows(JWTAuthException.class, () -> verifier.verify(tampered));
+    }
+
+    @Test
+    void rejectsExpiredToken() throws Exception {
+        String token = token("RS256", "rsa-1", rsaKey.getPrivate(), claims("user.one@mail.com", -3600));
+        assertThrows(JWTAuthException.class, () -> verifier.verify(token));
+    }
+
+    @Test
+    void rejectsUnsignedToken() {
+        String token = BASE64.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8)) + "." +
+                BASE64.encodeToString(claims("user.one@mail.com", 300).getBytes(StandardCharsets.UTF_8)) + ".";
+        assertThrows(JWTAuthException.class, () -> verifier.verify(token));
+    }
+
+    @Test
+    void rejectsTokenOfOtherType() throws Exception {
+        String claims = claims("user.one@mail.com", 300).replace("\"typ\":\"Bearer\"", "\"typ\":\"ID\"");
+        String token = token("RS256", "rsa-1", rsaKey.getPrivate(), claims);
+        assertThrows(JWTAuthException.class, () -> verifier.verify(token));
+    }
+
+    @Test
+    void rejectsClaimsNestedInPlaceOfSingleValues() throws Exception {
+        // the fields of the object must not be taken for the claims of the token
+        String nested = "{\"email\":{\"typ\":\"Bearer\",\"email\":\"user.five@mail.com\",\"exp\":" +
+                (System.currentTimeMillis() / 1000 + 300) + "},\"sub\":\"1\"}";
+        assertThrows(JWTAuthException.class, () -> verifier.verify(token("RS256", "rsa-1", rsaKey.getPrivate(), nested)));
+        String claims = claims("user.one@mail.com", 300).replace("\"sub\":\"1\"", "\"sub\":\"1\",\"jti\":[\"a\",{\"email\":\"x\"}]");
+        assertThrows(JWTAuthException.class, () -> verifier.verify(token("RS256", "rsa-1", rsaKey.getPrivate(), claims)));
+    }
+
+    @Test
+    void rejectsHeaderNestedInPlaceOfSingleValues() throws Exception {
+        String header = "{\"alg\":{\"alg\":\"RS256\"},\"kid\":\"rsa-1\"}";
+        String token = tokenWithHeader("RS256", header, rsaKey.getPrivate(), claims("user.one@mail.com", 300));
+        assertThrows(JWTAuthException.class, () -> verifier.verify(token));
+    }
+
+    @Test
+    void checksAudienceWhenConfigured() throws Exception {
+        String forFuseki = claims("user.one@mail.com", 300).replaceFirst("\\{", "{\"aud\":[\"account\",\"fuseki\"],");
+        String byFuseki = claims("user.one@mail.com", 300).replaceFirst("\\{", "{\"azp\":\"fuseki\",");
+        String forOther = claims("user.one@mail.com", 300).replaceFirst("\\{", "{\"aud\":\"other\",\"azp\":\"other\",");
+        try (JWTVerifier fusekiVerifier = verifier("fuseki")) {
+            assertThat(fusekiVerifier.verify(token("RS256", "rsa-1", rsaKey.getPrivate(), forFuseki)).getPrincipal(), equalTo("user.one@mail.com"));
+            assertThat(fusekiVerifier.verify(token("RS256", "rsa-1", rsaKey.getPrivate(), byFuseki)).getPrincipal(), equalTo("user.one@mail.com"));
+            String token = token("RS256", "rsa-1", rsaKey.getPrivate(), forOther);
+            assertThrows(JWTAuthException.class, () -> fusekiVerifier.verify(token));
+            assertThat(verifier.verify(token).getPrincipal(), equalTo("user.one@mail.com"));
+        }
+    }
+
+    @Test
+    void reloadsKeySetForRotatedKey() throws Exception {
+        verifier.verify(token("RS256", "rsa-1", rsaKey.getPrivate(), claims("user.one@mail.com", 300)));
+        KeyPair rotated = rsaKey();
+        writeKeySet(rsaJwk("rsa-2", rotated));
+        String token = token("RS256", "rsa-2", rotated.getPrivate(), claims("user.one@mail.com", 300));
+        assertThat(verifier.verify(token).getPrincipal(), equalTo("user.one@mail.com"));
+    }
+
+    private static KeyPair rsaKey() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    private void writeKeySet(String keys) throws IOException {
+        Files.write(jwksFile, ("{\"keys\":[" + keys + "]}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String rsaJwk(String keyId, KeyPair key) {
+        RSAPublicKey publicKey = (RSAPublicKey) key.getPublic();
+        return "{\"kty\":\"RSA\",\"kid\":\"" + keyId + "\",\"use\":\"sig\",\"n\":\"" + unsigned(publicKey.getModulus(), 0) +
+                "\",\"e\":\"" + unsigned(publicKey.getPublicExponent(), 0) + "\"}";
+    }
+
+    private static String ecJwk(String keyId, KeyPair key) {
+        ECPublicKey publicKey = (ECPublicKey) key.getPublic();
+        return "{\"kty\":\"EC\",\"kid\":\"" + keyId + "\",\"crv\":\"P-256\",\"x\":\"" + unsigned(publicKey.getW().getAffineX(), 32) +
+                "\",\"y\":\"" + unsigned(publicKey.getW().getAffineY(), 32) + "\"}";
+    }
+
+    private static String claims(String email, long expiresIn) {
+        return "{\"typ\":\"Bearer\",\"sub\":\"1\",\"realm_access\":{\"roles\":[\"user\"]},\"groups\":[\"/editors\"],\"email\":\"" + email +
+                "\",\"exp\":" + (System.currentTimeMillis() / 1000 + expiresIn) + "}";
+    }
+
+    private static String token(String algorithm, String keyId, PrivateKey key, String claims) throws GeneralSecurityException {
+        return tokenWithHeader(algorithm, "{\"alg\":\"" + algorithm + "\",\"typ\":\"JWT\",\"kid\":\"" + keyId + "\"}", key, claims);
+    }
+
+    private static String tokenWithHeader(String algorithm, String header, PrivateKey key, String claims) throws GeneralSecurityException {
+        String signed = BASE64.encodeToString(header.getBytes(StandardCharsets.UTF_8)) + "." +
+                BASE64.encodeToString(claims.getBytes(StandardCharsets.UTF_8));
+        Signature signature = Signature.getInstance(algorithm.equals("RS256") ? "SHA256withRSA" : "SHA256withECDSA");
+        signature.initSign(key);
+        signature.update(signed.getBytes(StandardCharsets.US_ASCII));
+        byte[] value = signature.sign();
+        return signed + "." + BASE64.encodeToString(algorithm.equals("ES256") ? concatenated(value) : value);
+    }
+
+    // the R and S of a DER encoded ECDSA signature, as JWS wants them
+    private static byte[] concatenated(byte[] der) {
+        int rLength = der[3];
+        BigInteger r = new BigInteger(Arrays.copyOfRange(der, 4, 4 + rLength));
+        int sLength = der[5 + rLength];
+        BigInteger s = new BigInteger(Arrays.copyOfRange(der, 6 + rLength, 6 + rLength + sLength));
+        byte[] result = new byte[64];
+        System.arraycopy(fixedLength(r, 32), 0, result, 0, 32);
+        System.arraycopy(fixedLength(s, 32), 0, result, 32, 32);
+        return result;
+    }
+
+    private static String unsigned(BigInteger value, int length) {
+        return BASE64.encodeToString(fixedLength(value, length));
+    }
+
+    private static byte[] fixedLength(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        if (bytes.length >= length) {
+            return bytes;
+        }
+        byte[] padded = new byte[length];
+        System.arraycopy(bytes, 0, padded, length - bytes.length, bytes.length);
+        return padded;
+    }
+}
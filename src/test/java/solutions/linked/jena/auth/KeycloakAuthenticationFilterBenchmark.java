@@ -0,0 +1,117 @@
+package solutions.linked.jena.auth;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.Collections;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.http.HttpHeaders;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.adapters.config.AdapterConfig;
+
+/**
+ * Compares the time and the memory allocated per request to authenticate a
+ * bearer token with the full Keycloak adapter and with the bearer-only path of
+ * the {@link KeycloakAuthenticationFilter}, with the token cache disabled. Not run
+ * with the tests, run it with {@code mvn test -Dtest=KeycloakAuthenticationFilterBenchmark}.
+ */
+class KeycloakAuthenticationFilterBenchmark {
+
+    private static final int WARMUP = 2000;
+    private static final int ITERATIONS = 20000;
+    private static final String AUTH_SERVER_URL = "http://keycloak:8080/auth";
+    private static final String EMAIL = "user.one@mail.com";
+
+    @Test
+    void bearerTokenAuthentication() throws Exception {
+        KeyPair realmKey = realmKey();
+        String token = token(realmKey);
+        HttpServletRequest request = request(token);
+        HttpServletResponse response = mock(HttpServletResponse.class, withSettings().stubOnly());
+        String cacheSize = System.getProperty("TOKEN_CACHE_MAX_SIZE");
+        System.setProperty("TOKEN_CACHE_MAX_SIZE", "0");
+        try {
+            run("full adapter", new KeycloakAuthenticationFilter(adapterConfig(realmKey, false)), request, response);
+            run("bearer-only", new KeycloakAuthenticationFilter(adapterConfig(realmKey, true)), request, response);
+        } finally {
+            if (cacheSize == null) {
+                System.clearProperty("TOKEN_CACHE_MAX_SIZE");
+            } else {
+                System.setProperty("TOKEN_CACHE_MAX_SIZE", cacheSize);
+            }
+        }
+    }
+
+    private static void run(String name, KeycloakAuthenticationFilter filter, HttpServletRequest request, HttpServletResponse response) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            filter.createToken(request, response);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        AuthenticationToken token = null;
+        for (int i = 0; i < ITERATIONS; i++) {
+            token = filter.createToken(request, response);
+        }
+        long nanos = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        System.out.printf("%s: %.1f µs/request, %d bytes/request%n", name, nanos / 1000.0 / ITERATIONS, allocated / ITERATIONS);
+        assertThat(token.getPrincipal(), equalTo(EMAIL));
+    }
+
+    private static KeyPair realmKey() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    private static AdapterConfig adapterConfig(KeyPair realmKey, boolean bearerOnly) {
+        AdapterConfig adapterConfig = new AdapterConfig();
+        adapterConfig.setRealm("master");
+        adapterConfig.setResource("fuseki-server");
+        adapterConfig.setAuthServerUrl(AUTH_SERVER_URL);
+        adapterConfig.setRealmKey(Base64.getEncoder().encodeToString(realmKey.getPublic().getEncoded()));
+        adapterConfig.setSslRequired("none");
+        adapterConfig.setPublicClient(true);
+        adapterConfig.setBearerOnly(bearerOnly);
+        return adapterConfig;
+    }
+
+    private static String token(KeyPair realmKey) throws Exception {
+        Base64.Encoder base64 = Base64.getUrlEncoder().withoutPadding();
+        long now = System.currentTimeMillis() / 1000;
+        String claims = "{\"jti\":\"benchmark\",\"exp\":" + (now + 3600) + ",\"iat\":" + now + ",\"iss\":\"" + AUTH_SERVER_URL +
+                "/realms/master\",\"typ\":\"Bearer\",\"azp\":\"fuseki-server\",\"email\":\"" + EMAIL + "\"}";
+        String signed = base64.encodeToString("{\"alg\":\"RS256\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8)) + "." +
+                base64.encodeToString(claims.getBytes(StandardCharsets.UTF_8));
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(realmKey.getPrivate());
+        signature.update(signed.getBytes(StandardCharsets.US_ASCII));
+        return signed + "." + base64.encodeToString(signature.sign());
+    }
+
+    private static HttpServletRequest request(String token) {
+        HttpServletRequest request = mock(HttpServletRequest.class, withSettings().stubOnly());
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getHeader(HttpHeaders.AUTHORIZATION)).thenReturn("Bearer " + token);
+        when(request.getHeaders(HttpHeaders.AUTHORIZATION)).thenAnswer(invocation -> Collections.enumeration(Collections.singletonList("Bearer " + token)));
+        when(request.getRequestURL()).thenAnswer(invocation -> new StringBuffer("http://localhost:3030/ds/query"));
+        when(request.getRequestURI()).thenReturn("/ds/query");
+        when(request.getSession(anyBoolean())).thenReturn(null);
+        return request;
+    }
+}
@@ -0,0 +1,59 @@
+package solutions.linked.jena.auth;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.number.OrderingComparison.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+class VerifiedTokenCacheTest {
+
+    private static JWTClaims claims(String principal, long expiresIn) {
+        long now = System.currentTimeMillis() / 1000;
+        return new JWTClaims(principal, "https://auth.example.org/realms/master", null, now, now + expiresIn, Collections.emptySet());
+    }
+
+    @Test
+    void returnsClaimsOfCachedToken() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(16);
+        assertThat(cache.get("token"), nullValue());
+        JWTClaims claims = claims("user.one@mail.com", 300);
+        cache.put("token", claims);
+        assertThat(cache.get("token"), equalTo(claims));
+        assertThat(cache.get("other token"), nullValue());
+        assertThat(cache.getHitCount(), equalTo(1L));
+        assertThat(cache.getMissCount(), equalTo(2L));
+    }
+
+    @Test
+    void forgetsExpiredToken() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(16);
+        cache.put("token", claims("user.one@mail.com", -1));
+        assertThat(cache.get("token"), nullValue());
+    }
+
+    @Test
+    void rejectsRevokedToken() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(16);
+        cache.put("token", claims("user.one@mail.com", 300));
+        cache.setRevocationCheck(claims -> claims.getPrincipal().equals("user.one@mail.com"));
+        assertThrows(JWTAuthException.class, () -> cache.get("token"));
+        assertThrows(JWTAuthException.class, () -> cache.put("token", claims("user.one@mail.com", 300)));
+        assertThat(cache.size(), equalTo(0));
+    }
+
+    @Test
+    void staysWithinMaxSize() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(16);
+        JWTClaims claims = claims("user.one@mail.com", 300);
+        for (int i = 0; i < 100; i++) {
+            cache.put("token " + i, claims);
+        }
+        assertThat(cache.size(), lessThanOrEqualTo(16));
+        assertThat(cache.get("token 99"), equalTo(claims));
+    }
+}
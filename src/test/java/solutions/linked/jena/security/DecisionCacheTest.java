@@ -0,0 +1,107 @@
+package solutions.linked.jena.security;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class DecisionCacheTest {
+
+    private static final String USER_ONE = "user.one@mail.com";
+    private static final String USER_TWO = "user.two@mail.com";
+    private static final String GRAPH_ONE = "http://www.smartswissparticipation.com/graphs/1";
+
+    @Test
+    void remembersDecisionsPerAction() {
+        DecisionCache cache = new DecisionCache(128, 1, TimeUnit.HOURS);
+        DecisionCache.Generation generation = cache.generation();
+        int user = generation.principalId(USER_ONE);
+        int graph = generation.graphId(GRAPH_ONE);
+        assertThat(generation.get(user, graph, AclIndex.READ), equalTo(DecisionCache.UNKNOWN));
+
+        generation.put(user, graph, AclIndex.READ, true);
+        generation.put(user, graph, AclIndex.CREATE, false);
+
+        assertThat(generation.get(user, graph, AclIndex.READ), equalTo(DecisionCache.GRANTED));
+        assertThat(generation.get(user, graph, AclIndex.CREATE), equalTo(DecisionCache.DENIED));
+        assertThat(generation.get(user, graph, AclIndex.DELETE), equalTo(DecisionCache.UNKNOWN));
+    }
+
+    @Test
+    void invalidatesSinglePrincipal() {
+        DecisionCache cache = new DecisionCache(128, 1, TimeUnit.HOURS);
+        DecisionCache.Generation generation = cache.generation();
+        int graph = generation.graphId(GRAPH_ONE);
+        int staleUser = generation.principalId(USER_ONE);
+        generation.put(staleUser, graph, AclIndex.READ, true);
+        generation.put(generation.principalId(USER_TWO), graph, AclIndex.READ, true);
+
+        cache.invalidate(USER_ONE);
+        // a decision computed before the invalidation must not become visible
+        generation.put(staleUser, graph, AclIndex.READ, true);
+
+        assertThat(generation.get(generation.principalId(USER_ONE), graph, AclIndex.READ), equalTo(DecisionCache.UNKNOWN));
+        assertThat(generation.get(generation.principalId(USER_TWO), graph, AclIndex.READ), equalTo(DecisionCache.GRANTED));
+    }
+
+    @Test
+    void invalidatesAll() {
+        DecisionCache cache = new DecisionCache(128, 1, TimeUnit.HOURS);
+        DecisionCache.Generation stale = cache.generation();
+        int user = stale.principalId(USER_ONE);
+        int graph = stale.graphId(GRAPH_ONE);
+        stale.put(user, graph, AclIndex.READ, true);
+
+        cache.invalidateAll();
+        stale.put(user, graph, AclIndex.READ, true);
+
+        DecisionCache.Generation generation = cache.generation();
+        assertThat(generation.get(generation.principalId(USER_ONE), generation.graphId(GRAPH_ONE), AclIndex.READ),
+                equalTo(DecisionCache.UNKNOWN));
+    }
+
+    @Test
+    void expiresDecisions() throws InterruptedException {
+        DecisionCache cache = new DecisionCache(128, 1, TimeUnit.MILLISECONDS);
+        DecisionCache.Generation generation = cache.generation();
+        int user = generation.principalId(USER_ONE);
+        int graph = generation.graphId(GRAPH_ONE);
+        generation.put(user, graph, AclIndex.READ, true);
+
+        Thread.sleep(5);
+
+        assertThat(generation.get(user, graph, AclIndex.READ), equalTo(DecisionCache.UNKNOWN));
+    }
+
+    @Test
+    void cachesNothingWithMaxSizeZero() {
+        DecisionCache cache = new DecisionCache(0, 1, TimeUnit.HOURS);
+        DecisionCache.Generation generation = cache.generation();
+        int user = generation.principalId(USER_ONE);
+        int graph = generation.graphId(GRAPH_ONE);
+        generation.put(user, graph, AclIndex.READ, true);
+
+        assertThat(generation.get(user, graph, AclIndex.READ), equalTo(DecisionCache.UNKNOWN));
+    }
+
+    @Test
+    void staysBounded() {
+        DecisionCache cache = new DecisionCache(64, 1, TimeUnit.HOURS);
+        DecisionCache.Generation generation = cache.generation();
+        int user = generation.principalId(USER_ONE);
+        for (int i = 0; i < 1000; i++) {
+            generation.put(user, generation.graphId(GRAPH_ONE + i), AclIndex.READ, true);
+        }
+        int cached = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (generation.get(user, generation.graphId(GRAPH_ONE + i), AclIndex.READ) != DecisionCache.UNKNOWN) {
+                cached++;
+            }
+        }
+        assertTrue(cached <= 64);
+        assertTrue(cached > 0);
+    }
+}
@@ -0,0 +1,118 @@
+package solutions.linked.jena.security;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.shiro.util.AntPathMatcher;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the compiled grants against Shiro's {@link AntPathMatcher}, which the
+ * {@code fo:accessTo} patterns were matched with before.
+ */
+class GrantMatcherTest {
+
+    private static final List<String> PATTERNS = Arrays.asList(
+            "*", "**", "?", "/*", "/**", "*/", "**/", "/", "",
+            "http://www.smartswissparticipation.com/graphs/1",
+            "http://www.smartswissparticipation.com/graphs/*",
+            "http://www.smartswissparticipation.com/graphs/**",
+            "http://www.smartswissparticipation.com/graphs/",
+            "http://www.smartswissparticipation.com/graphs/*/",
+            "http://www.smartswissparticipation.com/graphs/?",
+            "http://www.smartswissparticipation.com/graphs/g*s/**",
+            "http://www.smartswissparticipation.com/**/public",
+            "http://www.smartswissparticipation.com/**/public/*",
+            "http://www.smartswissparticipation.com/**/**/public/**",
+            "http://*/graphs/**",
+            "http://**",
+            "**/1",
+            "**/public/**",
+            "/graphs/*",
+            "/graphs/**/",
+            "graphs/*/1",
+            "/a/**/b/**/c",
+            "/a/*/b/*",
+            "urn:*");
+
+    private static final List<String> IRIS = Arrays.asList(
+            "", "/", "//", "a", "a/",
+            "http://www.smartswissparticipation.com",
+            "http://www.smartswissparticipation.com/",
+            "http://www.smartswissparticipation.com/graphs",
+            "http://www.smartswissparticipation.com/graphs/",
+            "http://www.smartswissparticipation.com/graphs/1",
+            "http://www.smartswissparticipation.com/graphs/1/",
+            "http://www.smartswissparticipation.com/graphs/12",
+            "http://www.smartswissparticipation.com/graphs//1",
+            "http://www.smartswissparticipation.com/graphs/users/public",
+            "http://www.smartswissparticipation.com/graphs/users/public/1",
+            "http://www.smartswissparticipation.com/public",
+            "http://www.smartswissparticipation.com/graphs/groups/x/public/y/z",
+            "http://example.org/graphs/1",
+            "https://www.smartswissparticipation.com/graphs/1",
+            "/graphs/1", "/graphs/1/", "/graphs/x/y/", "graphs/x/1",
+            "/a/b/c", "/a/x/b/y/c", "/a/b/b/c/c", "/a/x/b/y", "/a/x/b/y/",
+            "urn:uuid:1234", "urn:uuid:1234/");
+
+    private final AntPathMatcher antPathMatcher = new AntPathMatcher();
+
+    private static AclIndex.Grant grant(String pattern, int modes) {
+        return new AclIndex.Grant(new AntPattern(pattern), modes);
+    }
+
+    @Test
+    void matchesEachPatternLikeAntPathMatcher() {
+        for (String pattern : PATTERNS) {
+            GrantMatcher matcher = new GrantMatcher(new AclIndex.Grant[] {grant(pattern, AclIndex.READ)});
+            for (String iri : IRIS) {
+                boolean expected = antPathMatcher.match(pattern, iri);
+                assertThat(pattern + " on " + iri, matcher.modes(AntPattern.path(iri)) != 0, equalTo(expected));
+            }
+        }
+    }
+
+    @Test
+    void unitesModesOfOverlappingGrantsLikeAntPathMatcher() {
+        int[] modes = {AclIndex.READ, AclIndex.CREATE, AclIndex.DELETE, AclIndex.UPDATE};
+        // every window of consecutive patterns is the set of grants of one user
+        for (int size = 2; size <= 5; size++) {
+            for (int start = 0; start + size <= PATTERNS.size(); start++) {
+                AclIndex.Grant[] grants = new AclIndex.Grant[size];
+                for (int i = 0; i < size; i++) {
+                    grants[i] = grant(PATTERNS.get(start + i), modes[(start + i) % modes.length]);
+                }
+                AclIndex index = AclIndex.EMPTY.with(Collections.singletonMap("user", grants), null);
+                for (String iri : IRIS) {
+                    int expected = 0;
+                    for (AclIndex.Grant grant : grants) {
+                        if (antPathMatcher.match(grant.getPattern().toString(), iri)) {
+                            expected |= grant.getModes();
+                        }
+                    }
+                    assertThat(PATTERNS.subList(start, start + size) + " on " + iri,
+                            index.modes("user", AntPattern.path(iri)), equalTo(expected));
+                }
+            }
+        }
+    }
+
+    @Test
+    void unitesUserAndPublicGrantsLikeAntPathMatcher() {
+        String userPattern = "http://www.smartswissparticipation.com/graphs/*";
+        String publicPattern = "http://www.smartswissparticipation.com/**/public/**";
+        AclIndex index = AclIndex.EMPTY.with(
+                Collections.singletonMap("user", new AclIndex.Grant[] {grant(userPattern, AclIndex.WRITE)}),
+                new AclIndex.Grant[] {grant(publicPattern, AclIndex.READ)});
+        for (String iri : IRIS) {
+            int expected = (antPathMatcher.match(userPattern, iri) ? AclIndex.WRITE : 0) |
+                    (antPathMatcher.match(publicPattern, iri) ? AclIndex.READ : 0);
+            assertThat(iri, index.modes("user", AntPattern.path(iri)), equalTo(expected));
+            assertThat(iri, index.modes("other", AntPattern.path(iri)), equalTo(expected & AclIndex.READ));
+        }
+    }
+}
@@ -14,16 +14,21 @@ import static org.mockito.Mockito.when;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.mem.GraphMem;
 import org.apache.jena.permissions.SecurityEvaluator;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.impl.ModelCom;
+import org.apache.jena.sparql.core.DatasetChanges;
 import org.apache.jena.sparql.core.NamedGraphWrapper;
+import org.apache.jena.sparql.core.QuadAction;
+import org.apache.jena.vocabulary.RDF;
 import org.apache.shiro.subject.Subject;
 import org.apache.shiro.subject.support.SubjectThreadState;
 import org.apache.shiro.util.ThreadState;
@@ -40,6 +45,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 @DisplayName("Authenticated user test")
 class GraphSecurityEvaluatorTest {
 
+    private static final Node SECURITY_GRAPH = NodeFactory.createURI("http://www.smartswissparticipation.com/security");
     private static final String GRAPH_ONE = "http://www.smartswissparticipation.com/graphs/1";
     private static final Node GRAPH_ONE_URI = NodeFactory.createURI(GRAPH_ONE);
     private static final String GRAPH_TWO = "http://www.smartswissparticipation.com/graphs/2";
@@ -55,6 +61,8 @@ class GraphSecurityEvaluatorTest {
     @Mock
     private Subject subject;
 
+    private Model securityModel;
+
     private GraphSecurityEvaluator securityEvaluator;
 
     @BeforeEach
@@ -65,8 +73,8 @@ class GraphSecurityEvaluatorTest {
 
         //Create security graph
         GraphMem memoryGraph = new GraphMem();
-        NamedGraphWrapper securityGraph = new NamedGraphWrapper(NodeFactory.createURI("http://www.smartswissparticipation.com/security"), memoryGraph);
-        Model securityModel = new ModelCom(securityGraph);
+        NamedGraphWrapper securityGraph = new NamedGraphWrapper(SECURITY_GRAPH, memoryGraph);
+        securityModel = new ModelCom(securityGraph);
         securityModel.read(Objects.requireNonNull(getClass().getClassLoader().getResource("test_security_data.ttl")).toString());
 
         securityEvaluator = new GraphSecurityEvaluator(securityModel, "http://www.smartswissparticipation.com/graphs/users/");
@@ -296,6 +304,64 @@ class GraphSecurityEvaluatorTest {
         assertTrue(securityEvaluator.evaluateAny(subject, createUpdateDelete, GRAPH_ONE_URI), "User Two is permitted to execute any operation");
     }
 
+    @Test
+    @DisplayName("Committed changes to the security graph are applied to the compiled authorizations")
+    void securityGraphChanges() {
+        when(subject.getPrincipal()).thenReturn("user.one@mail.com");
+        Node graphTwo = NodeFactory.createURI(GRAPH_TWO);
+        assertFalse(securityEvaluator.evaluate(subject, Read, graphTwo), "User One is not permitted to read yet");
+
+        Node authorization = NodeFactory.createURI("http://www.smartswissparticipation.com/authorizations/7");
+        Node readMode = NodeFactory.createURI(Acl.getURI() + "Read");
+        List<Triple> grant = Arrays.asList(
+                Triple.create(authorization, RDF.type.asNode(), Acl.Authorization.asNode()),
+                Triple.create(authorization, Ontology.agentUserName.asNode(), NodeFactory.createLiteral("user.one@mail.com")),
+                Triple.create(authorization, Ontology.accessTo.asNode(), NodeFactory.createLiteral(GRAPH_TWO)),
+                Triple.create(authorization, Acl.mode.asNode(), readMode));
+
+        commit(QuadAction.ADD, grant);
+        assertTrue(securityEvaluator.evaluate(subject, Read, graphTwo), "User One is permitted to read");
+        assertFalse(securityEvaluator.evaluate(subject, Create, graphTwo), "User One is not permitted to create");
+        assertTrue(securityEvaluator.evaluate(subject, Read, GRAPH_ONE_URI), "Existing grants of User One are kept");
+
+        commit(QuadAction.DELETE, grant.subList(3, 4));
+        assertFalse(securityEvaluator.evaluate(subject, Read, graphTwo), "User One is no longer permitted to read");
+        assertTrue(securityEvaluator.evaluate(subject, Read, GRAPH_ONE_URI), "Existing grants of User One are kept");
+    }
+
+    @Test
+    @DisplayName("The authorizations are reloaded from the security graph if changes can't be applied")
+    void securityGraphChangesFailing() {
+        when(subject.getPrincipal()).thenReturn("user.one@mail.com");
+        Node graphTwo = NodeFactory.createURI(GRAPH_TWO);
+        Node authorization = NodeFactory.createURI("http://www.smartswissparticipation.com/authorizations/7");
+        securityModel.getGraph().add(Triple.create(authorization, RDF.type.asNode(), Acl.Authorization.asNode()));
+        securityModel.getGraph().add(Triple.create(authorization, Ontology.agentUserName.asNode(), NodeFactory.createLiteral("user.one@mail.com")));
+        securityModel.getGraph().add(Triple.create(authorization, Ontology.accessTo.asNode(), NodeFactory.createLiteral(GRAPH_TWO)));
+        securityModel.getGraph().add(Triple.create(authorization, Acl.mode.asNode(), NodeFactory.createURI(Acl.getURI() + "Read")));
+        assertFalse(securityEvaluator.evaluate(subject, Read, graphTwo), "User One is not permitted to read yet");
+
+        DatasetChanges listener = securityEvaluator.securityGraphListener();
+        listener.start();
+        listener.change(QuadAction.ADD, SECURITY_GRAPH, null, Acl.mode.asNode(), NodeFactory.createURI(Acl.getURI() + "Read"));
+        listener.finish();
+        assertTrue(securityEvaluator.evaluate(subject, Read, graphTwo), "User One is permitted to read");
+    }
+
+    private void commit(QuadAction action, List<Triple> triples) {
+        DatasetChanges listener = securityEvaluator.securityGraphListener();
+        listener.start();
+        for (Triple triple : triples) {
+            if (action == QuadAction.ADD) {
+                securityModel.getGraph().add(triple);
+            } else {
+                securityModel.getGraph().delete(triple);
+            }
+            listener.change(action, SECURITY_GRAPH, triple.getSubject(), triple.getPredicate(), triple.getObject());
+        }
+        listener.finish();
+    }
+
     @Test
     @DisplayName("Get principal should return bound Shiro subject")
     void getPrincipal() {
@@ -0,0 +1,92 @@
+package solutions.linked.jena.security;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.system.Txn;
+import org.apache.shiro.subject.support.SubjectThreadState;
+import org.apache.shiro.util.ThreadState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SecuredBulkLoaderTest {
+
+    private static final Node GRAPH_ONE = NodeFactory.createURI("http://www.smartswissparticipation.com/graphs/1");
+    private static final Node GRAPH_TWO = NodeFactory.createURI("http://www.smartswissparticipation.com/graphs/2");
+    private static final String SECRET_GRAPH = "http://example.org/secret";
+    private static final String S = "http://example.org/s";
+    private static final String P = "http://example.org/p";
+
+    private ThreadState threadState;
+    private SecuredDatasetGraph dataset;
+
+    @BeforeEach
+    void setUp() {
+        // user four may write graphs starting with http://www.smartswissparticipation.com/graphs only
+        threadState = new SubjectThreadState(SecuredDatasetGraphTest.subject("user.four@mail.com"));
+        threadState.bind();
+        dataset = SecuredDatasetGraphTest.createSecuredDataset();
+    }
+
+    @AfterEach
+    void tearDown() {
+        threadState.clear();
+    }
+
+    private static InputStream quads(String... graphs) {
+        StringBuilder nquads = new StringBuilder();
+        for (int i = 0; i < graphs.length; i++) {
+            nquads.append("<" + S + "> <" + P + "> \"" + i + "\" <" + graphs[i] + "> .\n");
+        }
+        return new ByteArrayInputStream(nquads.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private boolean contains(Node graph) {
+        return Txn.calculateRead(dataset.getBase(), () -> dataset.getBase().contains(graph, Node.ANY, Node.ANY, Node.ANY));
+    }
+
+    @Test
+    void loadsQuadsIntoTheirGraphs() {
+        SecuredBulkLoader.LoadResult result = new SecuredBulkLoader(dataset)
+                .load(quads(GRAPH_ONE.getURI(), GRAPH_TWO.getURI(), GRAPH_ONE.getURI()), Lang.NQUADS, null);
+        assertThat(result.getQuadCount(), equalTo(3L));
+        assertTrue(contains(GRAPH_ONE));
+        assertTrue(contains(GRAPH_TWO));
+    }
+
+    @Test
+    void abortsLoadAtGraphThatMayNotBeWritten() {
+        InputStream in = quads(GRAPH_ONE.getURI(), GRAPH_ONE.getURI(), SECRET_GRAPH, GRAPH_TWO.getURI());
+        assertThrows(AccessDeniedException.class, () -> new SecuredBulkLoader(dataset).load(in, Lang.NQUADS, null));
+        assertFalse(contains(GRAPH_ONE));
+        assertFalse(contains(NodeFactory.createURI(SECRET_GRAPH)));
+        assertFalse(contains(GRAPH_TWO));
+    }
+
+    @Test
+    void refusesSecurityGraph() {
+        threadState.clear();
+        // user five may write all graphs, the security graph included
+        threadState = new SubjectThreadState(SecuredDatasetGraphTest.subject("user.five@mail.com"));
+        threadState.bind();
+        Node securityGraph = SecuredDatasetGraphTest.SECURITY_GRAPH;
+        long securityTriples = Txn.calculateRead(dataset.getBase(), () -> (long) dataset.getBase().getGraph(securityGraph).size());
+        assertThrows(AccessDeniedException.class, () -> new SecuredBulkLoader(dataset)
+                .load(quads(GRAPH_ONE.getURI(), securityGraph.getURI()), Lang.NQUADS, null));
+        InputStream triples = new ByteArrayInputStream(("<" + S + "> <" + P + "> \"0\" .\n").getBytes(StandardCharsets.UTF_8));
+        assertThrows(AccessDeniedException.class, () -> new SecuredBulkLoader(dataset).load(triples, Lang.NTRIPLES, securityGraph));
+        assertFalse(contains(GRAPH_ONE));
+        assertThat(Txn.calculateRead(dataset.getBase(), () -> (long) dataset.getBase().getGraph(securityGraph).size()), equalTo(securityTriples));
+    }
+}
@@ -0,0 +1,124 @@
+package solutions.linked.jena.security;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.system.Txn;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.shiro.subject.support.SubjectThreadState;
+import org.apache.shiro.util.ThreadState;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Measures read throughput on a {@link SecuredDatasetGraph} backed by TDB2 for an
+ * increasing number of reader threads while a writer keeps changing the security
+ * graph. Not run with the tests, run it with
+ * {@code mvn test -Dtest=SecuredDatasetGraphConcurrencyBenchmark}.
+ */
+class SecuredDatasetGraphConcurrencyBenchmark {
+
+    private static final int GRAPHS = 200;
+    private static final int TRIPLES_PER_GRAPH = 50;
+    private static final long RUN_MILLIS = 2000;
+    private static final String READER = "user.three@mail.com";
+    private static final String WRITER = "user.five@mail.com";
+
+    @Test
+    void readThroughputWithActiveWriter() throws Exception {
+        SecuredDatasetGraph dataset = SecuredDatasetGraphTest.createSecuredDataset();
+        Txn.executeWrite(dataset.getBase(), () -> {
+            for (int g = 0; g < GRAPHS; g++) {
+                Node graph = NodeFactory.createURI("http://www.smartswissparticipation.com/graphs/" + g);
+                for (int t = 0; t < TRIPLES_PER_GRAPH; t++) {
+                    dataset.getBase().add(graph, NodeFactory.createURI("http://example.org/s" + t), RDF.value.asNode(), NodeFactory.createURI("http://example.org/o" + g));
+                }
+            }
+        });
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int readers = 1; readers <= cores; readers *= 2) {
+            long reads = run(dataset, readers);
+            System.out.printf("%d reader(s): %.0f read transactions/s%n", readers, reads * 1000.0 / RUN_MILLIS);
+            assertTrue(reads > 0);
+        }
+    }
+
+    private static long run(SecuredDatasetGraph dataset, int readers) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(readers + 1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch started = new CountDownLatch(readers + 1);
+        try {
+            executor.submit(() -> asUser(WRITER, () -> {
+                Node authorization = NodeFactory.createURI("http://www.smartswissparticipation.com/authorizations/benchmark");
+                Quad quad = new Quad(SecuredDatasetGraphTest.SECURITY_GRAPH, authorization, Ontology.agentUserName.asNode(), NodeFactory.createLiteral(READER));
+                started.countDown();
+                boolean add = true;
+                while (running.get()) {
+                    boolean adding = add;
+                    Txn.executeWrite(dataset, () -> {
+                        if (adding) {
+                            dataset.add(quad);
+                        } else {
+                            dataset.delete(quad);
+                        }
+                    });
+                    add = !add;
+                }
+                return 0L;
+            }));
+            List<Future<Long>> results = new ArrayList<>();
+            for (int i = 0; i < readers; i++) {
+                results.add(executor.submit(() -> asUser(READER, () -> {
+                    started.countDown();
+                    long count = 0;
+                    while (running.get()) {
+                        dataset.begin(TxnType.READ);
+                        try {
+                            Iter.count(dataset.find(Node.ANY, Node.ANY, RDF.value.asNode(), Node.ANY));
+                        } finally {
+                            dataset.end();
+                        }
+                        count++;
+                    }
+                    return count;
+                })));
+            }
+            started.await();
+            Thread.sleep(RUN_MILLIS);
+            running.set(false);
+            long reads = 0;
+            for (Future<Long> result : results) {
+                reads += result.get();
+            }
+            return reads;
+        } finally {
+            running.set(false);
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private static long asUser(String username, Callable<Long> task) throws Exception {
+        ThreadState threadState = new SubjectThreadState(SecuredDatasetGraphTest.subject(username));
+        threadState.bind();
+        try {
+            return task.call();
+        } finally {
+            threadState.clear();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package solutions.linked.jena.security;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Transactional.Promote;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.apache.jena.update.UpdateAction;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.shiro.mgt.DefaultSecurityManager;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.subject.support.SubjectThreadState;
+import org.apache.shiro.util.ThreadState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SecuredDatasetGraphTest {
+
+    static final Node SECURITY_GRAPH = NodeFactory.createURI("http://www.smartswissparticipation.com/security");
+    static final String OWN_GRAPH_PREFIX = "http://www.smartswissparticipation.com/graphs/users/";
+    private static final Node GRAPH_ONE = NodeFactory.createURI("http://www.smartswissparticipation.com/graphs/1");
+    private static final Node GRAPH_TWO = NodeFactory.createURI("http://www.smartswissparticipation.com/graphs/2");
+    private static final Node S = NodeFactory.createURI("http://example.org/s");
+    private static final Node P = NodeFactory.createURI("http://example.org/p");
+    private static final Node O = NodeFactory.createURI("http://example.org/o");
+
+    private ThreadState threadState;
+    private SecuredDatasetGraph dataset;
+
+    @BeforeEach
+    void setUp() {
+        threadState = new SubjectThreadState(subject("user.five@mail.com"));
+        threadState.bind();
+        dataset = createSecuredDataset();
+    }
+
+    @AfterEach
+    void tearDown() {
+        threadState.clear();
+    }
+
+    static Subject subject(String username) {
+        return new Subject.Builder(new DefaultSecurityManager())
+                .principals(new SimplePrincipalCollection(username, "test"))
+                .authenticated(true)
+                .buildSubject();
+    }
+
+    static SecuredDatasetGraph createSecuredDataset() {
+        DatasetGraph base = DatabaseMgr.createDatasetGraph();
+        Txn.executeWrite(base, () -> RDFDataMgr.read(base.getGraph(SECURITY_GRAPH),
+                Objects.requireNonNull(SecuredDatasetGraphTest.class.getClassLoader().getResource("test_security_data.ttl")).toString()));
+        GraphSecurityEvaluator evaluator = new GraphSecurityEvaluator(
+                ModelFactory.createModelForGraph(base.getGraph(SECURITY_GRAPH)), OWN_GRAPH_PREFIX);
+        SecuredDatasetGraph dataset = new SecuredDatasetGraph(base, evaluator, SECURITY_GRAPH);
+        dataset.addSecurityGraphListener(evaluator.securityGraphListener());
+        return dataset;
+    }
+
+    @Test
+    void beginsTransactionOfRequestedType() {
+        for (TxnType type : TxnType.values()) {
+            dataset.begin(type);
+            try {
+                assertThat(dataset.transactionType(), equalTo(type));
+            } finally {
+                dataset.abort();
+                dataset.end();
+            }
+        }
+    }
+
+    @Test
+    void promotesReadCommittedTransaction() {
+        dataset.begin(TxnType.READ_COMMITTED_PROMOTE);
+        try {
+            assertThat(dataset.transactionMode(), equalTo(ReadWrite.READ));
+            assertTrue(dataset.promote(Promote.READ_COMMITTED));
+            dataset.add(GRAPH_ONE, S, P, O);
+            dataset.commit();
+        } finally {
+            dataset.end();
+        }
+        Txn.executeRead(dataset, () -> assertTrue(dataset.contains(GRAPH_ONE, S, P, O)));
+    }
+
+    @Test
+    void revokesGrantsWhenSecurityGraphIsCleared() {
+        Txn.executeRead(dataset, () -> assertTrue(dataset.containsGraph(GRAPH_ONE)));
+        Txn.executeWrite(dataset, () -> UpdateAction.parseExecute("CLEAR GRAPH <" + SECURITY_GRAPH.getURI() + ">", dataset));
+        Txn.executeRead(dataset, () -> assertFalse(dataset.containsGraph(GRAPH_ONE)));
+    }
+
+    @Test
+    void deletesMatchingQuadsInAllGraphs() {
+        Txn.executeWrite(dataset, () -> {
+            dataset.add(GRAPH_ONE, S, P, O);
+            dataset.add(GRAPH_TWO, S, P, O);
+            dataset.deleteAny(Node.ANY, Node.ANY, P, Node.ANY);
+        });
+        Txn.executeRead(dataset, () -> {
+            assertFalse(dataset.contains(Node.ANY, Node.ANY, P, Node.ANY));
+            assertTrue(dataset.contains(SECURITY_GRAPH, Node.ANY, Node.ANY, Node.ANY));
+        });
+    }
+
+    @Test
+    void rejectsDeletingInAllGraphsIfOneMayNotBeWritten() {
+        Txn.executeWrite(dataset, () -> dataset.add(GRAPH_ONE, S, P, O));
+        threadState.clear();
+        threadState = new SubjectThreadState(subject("user.four@mail.com"));
+        threadState.bind();
+        dataset.begin(TxnType.WRITE);
+        try {
+            assertThrows(AccessDeniedException.class, () -> dataset.deleteAny(Node.ANY, Node.ANY, Node.ANY, Node.ANY));
+            assertTrue(dataset.contains(GRAPH_ONE, S, P, O));
+        } finally {
+            dataset.abort();
+            dataset.end();
+        }
+    }
+
+    @Test
+    void countsTriplesAgainAfterEachWriteCommit() {
+        Node o2 = NodeFactory.createURI("http://example.org/o2");
+        Txn.executeWrite(dataset, () -> dataset.add(GRAPH_ONE, S, P, O));
+        Txn.executeRead(dataset, () -> assertThat(dataset.graphSize(GRAPH_ONE), equalTo(1L)));
+        // written through the graph view, like the Graph Store Protocol does
+        Txn.executeWrite(dataset, () -> dataset.getGraph(GRAPH_ONE).add(Triple.create(S, P, o2)));
+        Txn.executeRead(dataset, () -> assertThat(dataset.graphSize(GRAPH_ONE), equalTo(2L)));
+        Txn.executeWrite(dataset, () -> UpdateAction.parseExecute("CLEAR GRAPH <" + GRAPH_ONE.getURI() + ">", dataset));
+        Txn.executeRead(dataset, () -> assertThat(dataset.graphSize(GRAPH_ONE), equalTo(0L)));
+    }
+
+    @Test
+    void countsReadableGraphsOnly() {
+        Txn.executeWrite(dataset, () -> {
+            dataset.add(GRAPH_ONE, S, P, O);
+            dataset.add(GRAPH_TWO, S, P, O);
+        });
+        threadState.clear();
+        // user one may read graph one only
+        threadState = new SubjectThreadState(subject("user.one@mail.com"));
+        threadState.bind();
+        Txn.executeRead(dataset, () -> {
+            assertThat(dataset.size(), equalTo(1L));
+            assertThat(dataset.getGraphSizes(), equalTo(Collections.singletonMap(GRAPH_ONE, 1L)));
+            assertThrows(AccessDeniedException.class, () -> dataset.graphSize(GRAPH_TWO));
+        });
+    }
+
+    @Test
+    void findsInDefaultGraphGrantedByItsSecurityName() {
+        Node authorization = NodeFactory.createURI("http://www.smartswissparticipation.com/authorizations/default");
+        Txn.executeWrite(dataset, () -> {
+            dataset.add(SECURITY_GRAPH, authorization, RDF.type.asNode(), Acl.Authorization.asNode());
+            dataset.add(SECURITY_GRAPH, authorization, Ontology.agentUserName.asNode(), NodeFactory.createLiteral("user.one@mail.com"));
+            dataset.add(SECURITY_GRAPH, authorization, Ontology.accessTo.asNode(),
+                    NodeFactory.createLiteral(SecuredDatasetGraph.DEFAULT_GRAPH_SECURITY_NAME));
+            dataset.add(SECURITY_GRAPH, authorization, Acl.mode.asNode(), NodeFactory.createURI(Acl.getURI() + "Read"));
+            dataset.add(Quad.defaultGraphIRI, S, P, O);
+            dataset.add(GRAPH_ONE, S, P, O);
+            dataset.add(GRAPH_TWO, S, P, O);
+        });
+        threadState.clear();
+        // user one may read graph one and, by the grant above, the default graph
+        threadState = new SubjectThreadState(subject("user.one@mail.com"));
+        threadState.bind();
+        Txn.executeRead(dataset, () -> {
+            List<Quad> quads = Iter.toList(dataset.find(Node.ANY, S, P, O));
+            assertThat(quads.size(), equalTo(2));
+            assertTrue(quads.stream().anyMatch(q -> Quad.isDefaultGraph(q.getGraph())));
+            assertTrue(quads.stream().anyMatch(q -> q.getGraph().equals(GRAPH_ONE)));
+        });
+    }
+
+    @Test
+    void clearsDataset() {
+        Txn.executeWrite(dataset, () -> {
+            dataset.add(GRAPH_ONE, S, P, O);
+            dataset.getDefaultGraph().add(Triple.create(S, P, O));
+            dataset.clear();
+        });
+        Txn.executeRead(dataset.getBase(), () -> assertTrue(dataset.getBase().isEmpty()));
+    }
+}
@@ -0,0 +1,215 @@
+package solutions.linked.jena.security;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.number.OrderingComparison.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.lib.Closeable;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphWrapper;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.subject.support.SubjectThreadState;
+import org.apache.shiro.util.ThreadState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SecuredExporterTest {
+
+    private static final Node SECURITY_GRAPH = SecuredDatasetGraphTest.SECURITY_GRAPH;
+    private static final Node GRAPH_ONE = NodeFactory.createURI("http://www.smartswissparticipation.com/graphs/1");
+    private static final Node GRAPH_TWO = NodeFactory.createURI("http://www.smartswissparticipation.com/graphs/2");
+    private static final Node SECRET_GRAPH = NodeFactory.createURI("http://example.org/secret");
+    private static final Node P = NodeFactory.createURI("http://example.org/p");
+    // more quads than fit in the queue of the exporter
+    private static final int LARGE_GRAPH_SIZE = 100_000;
+    // read from graph two once the exporter has taken a batch and the queue is full
+    private static final int QUEUE_FULL = 66 * 1024;
+    private static final long WAIT_MILLIS = 5000;
+
+    private final Subject subject = SecuredDatasetGraphTest.subject("user.three@mail.com");
+    private final AtomicLong quadsRead = new AtomicLong();
+    private final AtomicBoolean failing = new AtomicBoolean();
+    private final AtomicBoolean failed = new AtomicBoolean();
+    private ThreadState threadState;
+    private DatasetGraph tdb;
+    private SecuredDatasetGraph dataset;
+
+    @BeforeEach
+    void setUp() {
+        threadState = new SubjectThreadState(subject);
+        threadState.bind();
+        tdb = DatabaseMgr.createDatasetGraph();
+        Txn.executeWrite(tdb, () -> {
+            RDFDataMgr.read(tdb.getGraph(SECURITY_GRAPH),
+                    Objects.requireNonNull(getClass().getClassLoader().getResource("test_security_data.ttl")).toString());
+            tdb.add(GRAPH_ONE, node("s"), P, node("o1"));
+            tdb.add(SECRET_GRAPH, node("s"), P, node("secret"));
+            for (int i = 0; i < LARGE_GRAPH_SIZE; i++) {
+                tdb.add(GRAPH_TWO, node("s" + i), P, node("o" + i));
+            }
+        });
+        // counts the quads read from graph two, reading the secret graph fails when
+        // made to as soon as graph two has filled the queue of the exporter
+        DatasetGraph base = new DatasetGraphWrapper(tdb) {
+            @Override
+            public Iterator<Quad> find(Node g, Node s, Node p, Node o) {
+                if (g.equals(SECRET_GRAPH) && failing.get()) {
+                    waitFor(() -> quadsRead.get() >= QUEUE_FULL);
+                    failed.set(true);
+                    throw new IllegalStateException("Failed to read");
+                }
+                Iterator<Quad> quads = super.find(g, s, p, o);
+                return g.equals(GRAPH_TWO) ? new CountingIterator(quads) : quads;
+            }
+        };
+        GraphSecurityEvaluator evaluator = new GraphSecurityEvaluator(
+                ModelFactory.createModelForGraph(tdb.getGraph(SECURITY_GRAPH)), SecuredDatasetGraphTest.OWN_GRAPH_PREFIX);
+        dataset = new SecuredDatasetGraph(base, evaluator, SECURITY_GRAPH);
+    }
+
+    @AfterEach
+    void tearDown() {
+        threadState.clear();
+    }
+
+    private static void waitFor(BooleanSupplier condition) {
+        long start = System.currentTimeMillis();
+        while (!condition.getAsBoolean() && System.currentTimeMillis() - start < WAIT_MILLIS) {
+            Thread.yield();
+        }
+    }
+
+    private static Node node(String name) {
+        return NodeFactory.createURI("http://example.org/" + name);
+    }
+
+    private static List<Quad> parse(ByteArrayOutputStream out) {
+        List<Quad> quads = new ArrayList<>();
+        RDFDataMgr.createIteratorQuads(new ByteArrayInputStream(out.toByteArray()), Lang.NQUADS, null).forEachRemaining(quads::add);
+        return quads;
+    }
+
+    private List<Quad> readableQuads() {
+        List<Quad> quads = new ArrayList<>();
+        Txn.executeRead(tdb, () -> {
+            tdb.find(GRAPH_ONE, Node.ANY, Node.ANY, Node.ANY).forEachRemaining(quads::add);
+            tdb.find(GRAPH_TWO, Node.ANY, Node.ANY, Node.ANY).forEachRemaining(quads::add);
+        });
+        return quads;
+    }
+
+    @Test
+    void exportsReadableGraphs() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SecuredExporter(dataset).export(out, Lang.NQUADS);
+        List<Quad> expected = readableQuads();
+        List<Quad> exported = parse(out);
+        assertThat(exported.size(), equalTo(expected.size()));
+        assertThat(new HashSet<>(exported), equalTo(new HashSet<>(expected)));
+    }
+
+    @Test
+    void readsGraphsCommittedMeanwhileInExportingThread() throws InterruptedException {
+        List<Quad> expected = readableQuads();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dataset.begin(ReadWrite.READ);
+        try {
+            // user three may read the graphs but not write them, so user five writes
+            Thread writer = new Thread(SecuredDatasetGraphTest.subject("user.five@mail.com").associateWith(() ->
+                    Txn.executeWrite(dataset, () -> dataset.add(GRAPH_ONE, node("s"), P, node("o2")))));
+            writer.start();
+            writer.join();
+            new SecuredExporter(dataset).export(out, Lang.NQUADS);
+        } finally {
+            dataset.end();
+        }
+        List<Quad> exported = parse(out);
+        assertThat(exported.size(), equalTo(expected.size()));
+        assertThat(new HashSet<>(exported), equalTo(new HashSet<>(expected)));
+    }
+
+    @Test
+    void stopsReadingWhenWritingFails() {
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Connection closed");
+            }
+        };
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            subject.associateWith(() -> assertThrows(RuntimeException.class,
+                    () -> new SecuredExporter(dataset).export(out, Lang.NQUADS))).run();
+        });
+        assertThat(quadsRead.get(), lessThan((long) LARGE_GRAPH_SIZE));
+    }
+
+    @Test
+    void failsWhenGraphCantBeReadWhileQueueIsFull() {
+        // user five reads the secret graph too
+        Subject owner = SecuredDatasetGraphTest.subject("user.five@mail.com");
+        failing.set(true);
+        // holds up writing until reading the secret graph has failed
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) {
+                waitFor(failed::get);
+            }
+        };
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            owner.associateWith(() -> assertThrows(IllegalStateException.class,
+                    () -> new SecuredExporter(dataset).export(out, Lang.NQUADS))).run();
+        });
+    }
+
+    private final class CountingIterator implements Iterator<Quad>, Closeable {
+
+        private final Iterator<Quad> quads;
+
+        private CountingIterator(Iterator<Quad> quads) {
+            this.quads = quads;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return quads.hasNext();
+        }
+
+        @Override
+        public Quad next() {
+            quadsRead.incrementAndGet();
+            return quads.next();
+        }
+
+        @Override
+        public void close() {
+            Iter.close(quads);
+        }
+    }
+}
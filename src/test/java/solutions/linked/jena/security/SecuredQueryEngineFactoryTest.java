@@ -0,0 +1,165 @@
+package solutions.linked.jena.security;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.system.Txn;
+import org.apache.shiro.subject.support.SubjectThreadState;
+import org.apache.shiro.util.ThreadState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SecuredQueryEngineFactoryTest {
+
+    private static final String G1 = "http://www.smartswissparticipation.com/graphs/1";
+    private static final String G2 = "http://www.smartswissparticipation.com/graphs/2";
+    private static final Node G1_NODE = NodeFactory.createURI(G1);
+    private static final Node G2_NODE = NodeFactory.createURI(G2);
+    private static final Node SECRET_GRAPH = NodeFactory.createURI("http://example.org/secret");
+    private static final Node S = NodeFactory.createURI("http://example.org/s");
+    private static final Node P = NodeFactory.createURI("http://example.org/p");
+    private static final Node O = NodeFactory.createURI("http://example.org/o");
+    private static final Node SECRET = NodeFactory.createURI("http://example.org/secret-o");
+
+    private ThreadState threadState;
+    private SecuredDatasetGraph dataset;
+
+    @BeforeAll
+    static void registerFactory() {
+        SecuredQueryEngineFactory.register();
+    }
+
+    @BeforeEach
+    void setUp() {
+        // user three reads graphs 1 and 2, but neither the default graph nor the secret one
+        threadState = new SubjectThreadState(SecuredDatasetGraphTest.subject("user.three@mail.com"));
+        threadState.bind();
+        dataset = SecuredDatasetGraphTest.createSecuredDataset();
+        dataset.setNodeIdFilter(true);
+        Txn.executeWrite(dataset.getBase(), () -> {
+            dataset.getBase().add(G1_NODE, S, P, O);
+            dataset.getBase().add(G2_NODE, O, P, S);
+            dataset.getBase().add(SECRET_GRAPH, S, P, SECRET);
+            dataset.getBase().add(Quad.defaultGraphIRI, S, P, SECRET);
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        threadState.clear();
+    }
+
+    private List<Node> select(String query) {
+        List<Node> result = new ArrayList<>();
+        Txn.executeRead(dataset, () -> {
+            try (QueryExecution execution = QueryExecutionFactory.create(query, DatasetFactory.wrap(dataset))) {
+                execution.execSelect().forEachRemaining(row -> result.add(row.get("o").asNode()));
+            }
+        });
+        return result;
+    }
+
+    private List<List<Node>> selectRows(String query) {
+        List<List<Node>> result = new ArrayList<>();
+        Txn.executeRead(dataset, () -> {
+            try (QueryExecution execution = QueryExecutionFactory.create(query, DatasetFactory.wrap(dataset))) {
+                execution.execSelect().forEachRemaining(row -> result.add(Arrays.asList(row.get("g").asNode(), row.get("o").asNode())));
+            }
+        });
+        return result;
+    }
+
+    @Test
+    void filtersQuadsOfUnreadableGraphsByNodeId() {
+        assertTrue(SecuredQueryEngineFactory.isFilteredByNodeId(
+                Algebra.compile(QueryFactory.create("SELECT * { GRAPH ?g { ?s ?p ?o } }")), null));
+        assertThat(select("SELECT ?o { GRAPH ?g { ?s ?p ?o } }"), containsInAnyOrder(O, S));
+        assertThat(select("SELECT ?o { ?s ?p ?o }"), empty());
+    }
+
+    @Test
+    void restrictingVariableGraphsToFewReadableOnesKeepsRows() {
+        threadState.clear();
+        // user one reads graph 1 only
+        threadState = new SubjectThreadState(SecuredDatasetGraphTest.subject("user.one@mail.com"));
+        threadState.bind();
+        Txn.executeWrite(dataset.getBase(), () -> {
+            dataset.getBase().add(G1_NODE, O, P, S);
+            for (int i = 0; i < 4; i++) {
+                dataset.getBase().add(NodeFactory.createURI(SECRET_GRAPH.getURI() + i), S, P, SECRET);
+            }
+        });
+        assertTrue(Txn.calculateRead(dataset, () -> dataset.readableGraphs().isFew()));
+        String query = "SELECT ?g ?o { GRAPH ?g { ?s ?p ?o } OPTIONAL { GRAPH ?g { ?o ?p ?x } } }";
+        List<List<Node>> rows = selectRows(query);
+        assertThat(rows, containsInAnyOrder(Arrays.asList(G1_NODE, O), Arrays.asList(G1_NODE, S)));
+        dataset.setNodeIdFilter(false);
+        assertThat(selectRows(query), containsInAnyOrder(rows.toArray()));
+    }
+
+    @Test
+    void leavesPathsToSecuredDataset() {
+        assertFalse(SecuredQueryEngineFactory.isFilteredByNodeId(
+                Algebra.compile(QueryFactory.create("SELECT * { GRAPH ?g { ?s <" + P.getURI() + ">+ ?o } }")), null));
+        assertThat(select("SELECT ?o { GRAPH ?g { <" + S.getURI() + "> <" + P.getURI() + ">+ ?o } }"), contains(O));
+        assertThat(select("SELECT ?o { <" + S.getURI() + "> <" + P.getURI() + ">* ?o }"), contains(S));
+        assertThat(select("SELECT ?o { GRAPH ?g { <" + S.getURI() + "> !<http://example.org/q> ?o } }"), contains(O));
+    }
+
+    @Test
+    void leavesPropertyFunctionsToSecuredDataset() {
+        assertFalse(SecuredQueryEngineFactory.isFilteredByNodeId(Algebra.compile(QueryFactory.create(
+                "SELECT * { ?list <http://jena.apache.org/ARQ/list#member> ?o }")), null));
+    }
+
+    @Test
+    void readsGraphsOfDatasetDescription() {
+        assertThat(SecuredQueryEngineFactory.readGraphs(QueryFactory.create(
+                "SELECT * FROM <" + G1 + "> FROM NAMED <" + G2 + "> { GRAPH ?g { ?s ?p ?o } }"), false),
+                containsInAnyOrder(G1_NODE, G2_NODE));
+    }
+
+    @Test
+    void readsConstantGraphsOfPattern() {
+        assertThat(SecuredQueryEngineFactory.readGraphs(QueryFactory.create(
+                "SELECT * { ?s ?p ?o GRAPH <" + G1 + "> { ?s ?p ?x } }"), false),
+                containsInAnyOrder(Quad.defaultGraphIRI, G1_NODE));
+        assertThat(SecuredQueryEngineFactory.readGraphs(QueryFactory.create(
+                "ASK { GRAPH <" + G2 + "> { ?s ?p ?o } }"), true),
+                contains(G2_NODE));
+    }
+
+    @Test
+    void variableGraphsAreNotConstant() {
+        assertThat(SecuredQueryEngineFactory.readGraphs(QueryFactory.create(
+                "SELECT * { GRAPH ?g { ?s ?p ?o } }"), false), nullValue());
+        assertThat(SecuredQueryEngineFactory.readGraphs(QueryFactory.create(
+                "SELECT * { GRAPH <" + G1 + "> { ?s ?p ?o } { SELECT ?s { GRAPH ?g { ?s ?p ?o } } } }"), false), nullValue());
+        assertThat(SecuredQueryEngineFactory.readGraphs(QueryFactory.create(
+                "SELECT * { GRAPH <" + Quad.unionGraph.getURI() + "> { ?s ?p ?o } }"), false), nullValue());
+    }
+
+    @Test
+    void defaultGraphOfUnionIsNotConstant() {
+        assertThat(SecuredQueryEngineFactory.readGraphs(QueryFactory.create("SELECT * { ?s ?p ?o }"), true), nullValue());
+    }
+}
@@ -0,0 +1,107 @@
+package solutions.linked.jena.security;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.collection.IsIterableContainingInAnyOrder.containsInAnyOrder;
+import static org.hamcrest.core.Every.everyItem;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.TDB2;
+import org.apache.shiro.subject.support.SubjectThreadState;
+import org.apache.shiro.util.ThreadState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SecuredUnionGraphTest {
+
+    private static final Node GRAPH_ONE = NodeFactory.createURI("http://www.smartswissparticipation.com/graphs/1");
+    private static final Node GRAPH_TWO = NodeFactory.createURI("http://www.smartswissparticipation.com/graphs/2");
+    private static final Node SECRET_GRAPH = NodeFactory.createURI("http://example.org/secret");
+    private static final Node S = NodeFactory.createURI("http://example.org/s");
+    private static final Node P = NodeFactory.createURI("http://example.org/p");
+    private static final Node O1 = NodeFactory.createURI("http://example.org/o1");
+    private static final Node O2 = NodeFactory.createURI("http://example.org/o2");
+    private static final Node SECRET = NodeFactory.createURI("http://example.org/secret-o");
+
+    private ThreadState threadState;
+    private SecuredDatasetGraph dataset;
+
+    @BeforeEach
+    void setUp() {
+        // user three reads graphs 1 and 2, but neither the default graph, the security graph nor the secret one
+        threadState = new SubjectThreadState(SecuredDatasetGraphTest.subject("user.three@mail.com"));
+        threadState.bind();
+        dataset = SecuredDatasetGraphTest.createSecuredDataset();
+        Txn.executeWrite(dataset.getBase(), () -> {
+            dataset.getBase().add(GRAPH_ONE, S, P, O1);
+            dataset.getBase().add(GRAPH_TWO, S, P, O1);
+            dataset.getBase().add(GRAPH_TWO, S, P, O2);
+            dataset.getBase().add(SECRET_GRAPH, S, P, O1);
+            dataset.getBase().add(SECRET_GRAPH, S, P, SECRET);
+            dataset.getBase().add(Quad.defaultGraphIRI, S, P, SECRET);
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataset.getContext().remove(TDB2.symUnionDefaultGraph);
+        threadState.clear();
+    }
+
+    private List<Triple> findInUnionGraph(Node s, Node p, Node o) {
+        return Txn.calculateRead(dataset, () -> dataset.getUnionGraph().find(s, p, o).toList());
+    }
+
+    @Test
+    void suppressesDuplicatesOfBoundPattern() {
+        assertThat(findInUnionGraph(S, Node.ANY, Node.ANY), containsInAnyOrder(
+                Triple.create(S, P, O1), Triple.create(S, P, O2)));
+    }
+
+    @Test
+    void suppressesDuplicatesOfUnboundPattern() {
+        assertThat(findInUnionGraph(Node.ANY, Node.ANY, Node.ANY), containsInAnyOrder(
+                Triple.create(S, P, O1), Triple.create(S, P, O2)));
+    }
+
+    @Test
+    void leavesOutTriplesOfUnreadableGraphs() {
+        assertThat(findInUnionGraph(Node.ANY, Node.ANY, SECRET).size(), equalTo(0));
+    }
+
+    @Test
+    void usesUnionGraphOfBaseWhenAllGraphsAreReadable() {
+        threadState.clear();
+        // user five reads all graphs
+        threadState = new SubjectThreadState(SecuredDatasetGraphTest.subject("user.five@mail.com"));
+        threadState.bind();
+        assertThat(Txn.calculateRead(dataset, () -> dataset.listReadableGraphs().isAll()), equalTo(true));
+        assertThat(findInUnionGraph(S, P, Node.ANY), containsInAnyOrder(
+                Triple.create(S, P, O1), Triple.create(S, P, O2), Triple.create(S, P, SECRET)));
+    }
+
+    @Test
+    void readsUnionAsDefaultGraphWhenConfigured() {
+        Txn.executeRead(dataset, () -> assertThrows(AccessDeniedException.class,
+                () -> dataset.find(Quad.defaultGraphIRI, S, P, Node.ANY)));
+        dataset.getContext().set(TDB2.symUnionDefaultGraph, true);
+        Txn.executeRead(dataset, () -> {
+            assertThat(dataset.getDefaultGraph().find(S, P, Node.ANY).toList(), containsInAnyOrder(
+                    Triple.create(S, P, O1), Triple.create(S, P, O2)));
+            List<Quad> quads = Iter.toList(dataset.find(Quad.defaultGraphIRI, S, P, Node.ANY));
+            assertThat(Iter.toList(Iter.map(quads.iterator(), Quad::asTriple)), containsInAnyOrder(
+                    Triple.create(S, P, O1), Triple.create(S, P, O2)));
+            assertThat(Iter.toList(Iter.map(quads.iterator(), Quad::getGraph)), everyItem(equalTo(Quad.defaultGraphIRI)));
+            assertThat(Iter.toList(dataset.findNG(Quad.defaultGraphIRI, S, P, Node.ANY)).size(), equalTo(2));
+        });
+    }
+}
@@ -0,0 +1,67 @@
+package solutions.linked.jena.security;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.IsNull.nullValue;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.update.UpdateFactory;
+import org.junit.jupiter.api.Test;
+
+class UpdateTargetsTest {
+
+    private static final String G1 = "http://www.smartswissparticipation.com/graphs/1";
+    private static final String G2 = "http://www.smartswissparticipation.com/graphs/2";
+    private static final Node G1_NODE = NodeFactory.createURI(G1);
+    private static final Node G2_NODE = NodeFactory.createURI(G2);
+
+    private static UpdateTargets targets(String update) {
+        return UpdateTargets.of(UpdateFactory.create(update).getOperations().get(0), false);
+    }
+
+    @Test
+    void insertDataCreatesInItsGraphs() {
+        UpdateTargets targets = targets("INSERT DATA { GRAPH <" + G1 + "> { <urn:s> <urn:p> <urn:o> } <urn:s> <urn:p> <urn:o> }");
+        assertThat(targets.getCreate(), containsInAnyOrder(G1_NODE, Quad.defaultGraphIRI));
+        assertThat(targets.getRead(), empty());
+        assertThat(targets.getDelete(), empty());
+    }
+
+    @Test
+    void modifyWithConstantGraphs() {
+        UpdateTargets targets = targets("WITH <" + G1 + "> DELETE { ?s ?p ?o } INSERT { GRAPH <" + G2 + "> { ?s ?p ?o } } WHERE { ?s ?p ?o }");
+        assertThat(targets.getDelete(), containsInAnyOrder(G1_NODE));
+        assertThat(targets.getCreate(), containsInAnyOrder(G2_NODE));
+        assertThat(targets.getRead(), containsInAnyOrder(G1_NODE));
+    }
+
+    @Test
+    void modifyReadingGraphsInExists() {
+        UpdateTargets targets = targets("INSERT { GRAPH <" + G1 + "> { ?s ?p ?o } } WHERE { GRAPH <" + G1 + "> { ?s ?p ?o } FILTER NOT EXISTS { GRAPH <" + G2 + "> { ?s ?p ?o } } }");
+        assertThat(targets.getRead(), containsInAnyOrder(G1_NODE, G2_NODE));
+    }
+
+    @Test
+    void variableGraphsAreNotKnownUpFront() {
+        assertThat(targets("INSERT { GRAPH ?g { ?s ?p ?o } } WHERE { GRAPH ?g { ?s ?p ?o } }"), nullValue());
+        assertThat(targets("INSERT { GRAPH <" + G1 + "> { ?s ?p ?o } } WHERE { ?s ?p ?o FILTER EXISTS { GRAPH ?g { ?s ?p ?o } } }"), nullValue());
+        assertThat(targets("DELETE WHERE { GRAPH ?g { ?s ?p ?o } }"), nullValue());
+        assertThat(targets("DROP ALL"), nullValue());
+    }
+
+    @Test
+    void defaultGraphOfUnionIsNotKnownUpFront() {
+        assertThat(UpdateTargets.of(UpdateFactory.create("DELETE WHERE { ?s ?p ?o }").getOperations().get(0), true), nullValue());
+    }
+
+    @Test
+    void moveReadsAndDeletesSource() {
+        UpdateTargets targets = targets("MOVE <" + G1 + "> TO <" + G2 + ">");
+        assertThat(targets.getRead(), containsInAnyOrder(G1_NODE));
+        assertThat(targets.getCreate(), containsInAnyOrder(G2_NODE));
+        assertThat(targets.getDelete(), containsInAnyOrder(G1_NODE, G2_NODE));
+    }
+}